@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information.build;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Writes the StAX readers of the bundled schemas, run by the build before compiling.
+ * <p>
+ * Each complex type gets a method reading its attributes and child elements straight into the class xjc generated for it, through its
+ * setters and list getters. The output is one class, <code>se.trixon.trv_traffic_information.StaxReaders</code>, looked up by
+ * <code>StaxUnmarshaller</code>.</p>
+ *
+ * <pre>
+ * java StaxReaderGenerator.java &lt;output directory&gt; &lt;schema directory&gt; &lt;schema&gt;=&lt;package&gt;...
+ * </pre>
+ *
+ * @author Patrik Karlström
+ */
+public class StaxReaderGenerator {
+
+    private static final String PACKAGE = "se.trixon.trv_traffic_information";
+    private static final Map<String, String> PARSERS = new HashMap<>();
+    private static final String XS = "http://www.w3.org/2001/XMLSchema";
+
+    static {
+        PARSERS.put("xs:boolean", "parseBoolean");
+        PARSERS.put("xs:dateTime", "parseDateTime");
+        PARSERS.put("xs:double", "parseDouble");
+        PARSERS.put("xs:float", "parseFloat");
+        PARSERS.put("xs:int", "parseInt");
+        PARSERS.put("xs:long", "parseLong");
+        PARSERS.put("xs:string", null);
+        PARSERS.put("xs:unsignedByte", "parseShort");
+    }
+
+    private final StringBuilder mBuilder = new StringBuilder(1 << 20);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: StaxReaderGenerator <output directory> <schema directory> <schema>=<package>...");
+        }
+
+        StaxReaderGenerator generator = new StaxReaderGenerator();
+        Path schemaDirectory = Paths.get(args[1]);
+        ArrayList<Schema> schemas = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            String[] pair = args[i].split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected <schema>=<package>, got " + args[i]);
+            }
+            schemas.add(new Schema(schemaDirectory.resolve(pair[0].trim()), pair[1].trim()));
+        }
+
+        Path file = Paths.get(args[0], PACKAGE.replace('.', '/'), "StaxReaders.java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, generator.generate(schemas), StandardCharsets.UTF_8);
+        System.out.format("Wrote the readers of %d schemas to %s%n", schemas.size(), file);
+    }
+
+    /**
+     * Capitalizes a name the way xjc does for the names in the bundled schemas, anything else is refused rather than guessed.
+     */
+    private static String capitalize(String name) {
+        if (!name.matches("[A-Za-z][A-Za-z0-9]*")) {
+            throw new IllegalArgumentException("Unsupported name " + name);
+        }
+
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static List<Element> getChildren(Element parent, String localName) {
+        ArrayList<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && XS.equals(node.getNamespaceURI()) && localName.equals(node.getLocalName())) {
+                children.add((Element) node);
+            }
+        }
+
+        return children;
+    }
+
+    private StaxReaderGenerator() {
+    }
+
+    private StaxReaderGenerator append(String... parts) {
+        for (String part : parts) {
+            mBuilder.append(part);
+        }
+        mBuilder.append('\n');
+
+        return this;
+    }
+
+    private String generate(List<Schema> schemas) throws Exception {
+        append("//");
+        append("// Generated by StaxReaderGenerator from the bundled schemas.");
+        append("// Any modifications to this file will be lost when the project is built.");
+        append("//");
+        append("package ", PACKAGE, ";");
+        append();
+        append("import jakarta.xml.bind.Unmarshaller;");
+        append("import java.util.HashMap;");
+        append("import java.util.Map;");
+        append("import javax.xml.stream.XMLStreamException;");
+        append("import javax.xml.stream.XMLStreamReader;");
+        append();
+        append("/**");
+        append(" * The StAX readers of the classes generated from the bundled schemas.");
+        append(" */");
+        append("final class StaxReaders {");
+        append();
+        append("    private static final Map<Class<?>, StaxUnmarshaller.Reader<?>> READERS = new HashMap<>();");
+        append();
+        append("    static {");
+        for (Schema schema : schemas) {
+            append("        ", schema.getName(), ".register(READERS);");
+        }
+        append("    }");
+        append();
+        append("    /**");
+        append("     *");
+        append("     * @return the reader of the class, or <code>null</code> if the class is not generated from a bundled schema");
+        append("     */");
+        append("    static StaxUnmarshaller.Reader<?> get(Class<?> clazz) {");
+        append("        return READERS.get(clazz);");
+        append("    }");
+        append();
+        append("    private StaxReaders() {");
+        append("    }");
+        for (Schema schema : schemas) {
+            generate(schema);
+        }
+        append("}");
+
+        return mBuilder.toString();
+    }
+
+    private void generate(Schema schema) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(schema.mPath.toFile());
+        Element root = document.getDocumentElement();
+
+        HashMap<String, String> simpleTypes = new HashMap<>();
+        for (Element simpleType : getChildren(root, "simpleType")) {
+            for (Element restriction : getChildren(simpleType, "restriction")) {
+                simpleTypes.put(simpleType.getAttribute("name"), restriction.getAttribute("base"));
+            }
+        }
+        List<Element> complexTypes = getChildren(root, "complexType");
+
+        append();
+        append("    /**");
+        append("     * ", schema.mPath.getParent().getFileName().toString(), "/", schema.mPath.getFileName().toString());
+        append("     */");
+        append("    private static final class ", schema.getName(), " {");
+        append();
+        append("        private static void register(Map<Class<?>, StaxUnmarshaller.Reader<?>> readers) {");
+        for (Element complexType : complexTypes) {
+            String className = capitalize(complexType.getAttribute("name"));
+            append("            readers.put(", schema.mPackage, ".", className, ".class, ", schema.getName(), "::read", className, ");");
+        }
+        append("        }");
+
+        for (Element complexType : complexTypes) {
+            generate(schema, complexType, simpleTypes);
+        }
+        append("    }");
+    }
+
+    private void generate(Schema schema, Element complexType, Map<String, String> simpleTypes) {
+        String className = schema.mPackage + "." + capitalize(complexType.getAttribute("name"));
+        List<Element> attributes = getChildren(complexType, "attribute");
+        ArrayList<Element> elements = new ArrayList<>();
+        boolean any = false;
+        for (Element sequence : getChildren(complexType, "sequence")) {
+            elements.addAll(getChildren(sequence, "element"));
+            any |= !getChildren(sequence, "any").isEmpty();
+        }
+
+        append();
+        append("        private static ", className, " read", capitalize(complexType.getAttribute("name")), "(XMLStreamReader reader, Object parent, Unmarshaller.Listener listener) throws XMLStreamException {");
+        append("            ", className, " object = new ", className, "();");
+        append("            if (listener != null) {");
+        append("                listener.beforeUnmarshal(object, parent);");
+        append("            }");
+        if (!attributes.isEmpty()) {
+            append("            for (int i = 0; i < reader.getAttributeCount(); i++) {");
+            append("                switch (reader.getAttributeLocalName(i)) {");
+            for (Element attribute : attributes) {
+                String type = resolve(attribute.getAttribute("type"), simpleTypes);
+                append("                    case \"", attribute.getAttribute("name"), "\":");
+                append("                        object.set", capitalize(attribute.getAttribute("name")), "(", parse(type, "reader.getAttributeValue(i)"), ");");
+                append("                        break;");
+            }
+            append("                    default:");
+            append("                        break;");
+            append("                }");
+            append("            }");
+        }
+        append();
+        // The lax any-content of EVALRESULT is kept as DOM elements
+        String other = any ? "object.setAny(StaxUnmarshaller.readElement(reader));" : "StaxUnmarshaller.skip(reader);";
+        append("            while (StaxUnmarshaller.nextElement(reader)) {");
+        if (elements.isEmpty()) {
+            append("                ", other);
+            append("            }");
+        } else {
+            generate(elements, simpleTypes, other);
+        }
+        append();
+        append("            if (listener != null) {");
+        append("                listener.afterUnmarshal(object, parent);");
+        append("            }");
+        append();
+        append("            return object;");
+        append("        }");
+    }
+
+    private void generate(List<Element> elements, Map<String, String> simpleTypes, String other) {
+        append("                switch (reader.getLocalName()) {");
+        for (Element element : elements) {
+            String name = element.getAttribute("name");
+            String type = resolve(element.getAttribute("type"), simpleTypes);
+            String value = PARSERS.containsKey(type) ? parse(type, "reader.getElementText()") : "read" + capitalize(type) + "(reader, object, listener)";
+            append("                    case \"", name, "\":");
+            if ("unbounded".equals(element.getAttribute("maxOccurs"))) {
+                append("                        object.get", capitalize(name), "().add(", value, ");");
+            } else {
+                append("                        object.set", capitalize(name), "(", value, ");");
+            }
+            append("                        break;");
+        }
+        append("                    default:");
+        append("                        ", other);
+        append("                        break;");
+        append("                }");
+        append("            }");
+    }
+
+    private String parse(String type, String text) {
+        String parser = PARSERS.get(type);
+
+        return parser == null ? text : "StaxUnmarshaller." + parser + "(reader, " + text + ")";
+    }
+
+    private String resolve(String type, Map<String, String> simpleTypes) {
+        while (simpleTypes.containsKey(type)) {
+            type = simpleTypes.get(type);
+        }
+        if (type.startsWith("xs:") && !PARSERS.containsKey(type)) {
+            throw new IllegalArgumentException("Unsupported type " + type);
+        }
+
+        return type;
+    }
+
+    /**
+     * A bundled schema and the package of its classes.
+     */
+    private static class Schema {
+
+        private final String mPackage;
+        private final Path mPath;
+
+        Schema(Path path, String packageName) throws IOException {
+            if (!Files.isRegularFile(path)) {
+                throw new IOException("No schema " + path);
+            }
+            mPath = path;
+            mPackage = packageName;
+        }
+
+        /**
+         *
+         * @return the file name as a class name, e.g. TrainAnnouncement_v1_6
+         */
+        String getName() {
+            return mPath.getFileName().toString().replaceFirst("\\.xsd$", "").replace('.', '_');
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Several queries, of any object types, sent in one request.
+ * <p>
+ * The service returns one RESULT per QUERY, in query order. The response is parsed as a stream and each RESULT is unmarshalled to the RESULT
+ * class of its query and made available from the {@link Entry} returned when the query was added.</p>
+ *
+ * <pre>
+ * Batch batch = trafficInformation.createBatch();
+ * Batch.Entry&lt;...trainannouncement.v1_6.RESULT&gt; announcements = batch.add(ObjectType.TRAIN_ANNOUNCEMENT, null, filter);
+ * Batch.Entry&lt;...situation.v1_4.RESULT&gt; situations = batch.add(ObjectType.SITUATION, null, null);
+ * batch.execute(null);
+ * announcements.getResults();
+ * </pre>
+ *
+ * A batch is not thread-safe. It can be executed repeatedly, each execution replaces the results of the entries.
+ *
+ * @author Patrik Karlström
+ */
+public class Batch {
+
+    private final ArrayList<Entry<?>> mEntries = new ArrayList<>();
+    private final TrafficInformation mTrafficInformation;
+
+    Batch(TrafficInformation trafficInformation) {
+        mTrafficInformation = trafficInformation;
+    }
+
+    /**
+     * Adds a query.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @return the entry holding the results of the query once executed
+     */
+    public <R> Entry<R> add(ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails) {
+        Entry<R> entry = new Entry<>(objectType, mTrafficInformation.getQuery(queryAttributes, objectType, queryDetails));
+        mEntries.add(entry);
+
+        return entry;
+    }
+
+    /**
+     * Adds a built query.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param query
+     * @param parameters the values of the parameters of the query. <code>null</code> is valid for a query without parameters.
+     * @return the entry holding the results of the query once executed
+     */
+    public <R> Entry<R> add(Query<R> query, Map<String, ?> parameters) {
+        Entry<R> entry = new Entry<>(query.getObjectType(), query.toXml(parameters));
+        mEntries.add(entry);
+
+        return entry;
+    }
+
+    /**
+     * Sends all queries in one request and distributes the results to the entries.
+     *
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @throws IOException also if the response does not hold one RESULT per query
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public void execute(File file) throws IOException, InterruptedException, JAXBException {
+        parse(mTrafficInformation.openBody(mTrafficInformation.getHttpResponse(null, getRequest()), file));
+    }
+
+    /**
+     * Sends all queries in one request without blocking the calling thread. The response is parsed using the executor of the
+     * {@link TrafficInformation}.
+     *
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @return a future completed when the results are distributed to the entries
+     */
+    public CompletableFuture<Void> executeAsync(File file) {
+        return mTrafficInformation.getHttpResponseAsync(null, getRequest())
+                .thenAcceptAsync(response -> {
+                    try {
+                        parse(mTrafficInformation.openBody(response, file));
+                    } catch (IOException | JAXBException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, mTrafficInformation.getExecutor());
+    }
+
+    /**
+     *
+     * @return the entries in query order
+     */
+    public List<Entry<?>> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    /**
+     *
+     * @return the number of queries
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    private String getRequest() {
+        if (mEntries.isEmpty()) {
+            throw new IllegalStateException("The batch is empty");
+        }
+
+        ArrayList<String> queries = new ArrayList<>();
+        for (Entry<?> entry : mEntries) {
+            entry.mResults = null;
+            queries.add(entry.mQuery);
+        }
+
+        return mTrafficInformation.getRequest(queries);
+    }
+
+    private void parse(InputStream inputStream) throws IOException, JAXBException {
+        ArrayList<List<Object>> results = new ArrayList<>();
+        for (int i = 0; i < mEntries.size(); i++) {
+            results.add(new ArrayList<>());
+        }
+
+        try (inputStream) {
+            XMLStreamReader reader = TrafficInformation.createXMLStreamReader(inputStream);
+            try {
+                int depth = 0;
+                int index = 0;
+                boolean positioned = false;
+                while (positioned || reader.hasNext()) {
+                    int event = positioned ? reader.getEventType() : reader.next();
+                    positioned = false;
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2 && "RESULT".equals(reader.getLocalName())) {
+                            if (index >= mEntries.size()) {
+                                throw new IOException(String.format("Got more than the %d RESULT requested", mEntries.size()));
+                            }
+
+                            results.get(index).add(unmarshal(reader, mEntries.get(index)));
+                            index++;
+                            depth--;
+                            // The unmarshaller leaves the reader on the event following the element
+                            positioned = true;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+
+                if (index < mEntries.size()) {
+                    throw new IOException(String.format("Expected %d RESULT, got %d", mEntries.size(), index));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+
+        for (int i = 0; i < mEntries.size(); i++) {
+            setResults(mEntries.get(i), results.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void setResults(Entry<R> entry, List<Object> results) {
+        // Each result was unmarshalled to the RESULT class of the entry
+        entry.mResults = Collections.unmodifiableList((List<R>) (List<?>) results);
+    }
+
+    private Object unmarshal(XMLStreamReader reader, Entry<?> entry) throws JAXBException, XMLStreamException {
+        UnmarshallerPool unmarshallerPool = mTrafficInformation.getUnmarshallerPool();
+        Class<?> resultClass = entry.getObjectType().getResultClass();
+        if (mTrafficInformation.isDirectUnmarshalling() && StaxUnmarshaller.canUnmarshal(resultClass)) {
+            return StaxUnmarshaller.unmarshal(resultClass, reader, unmarshallerPool.getListener());
+        }
+
+        Class<?> responseClass = entry.getObjectType().getResponseClass();
+        Unmarshaller unmarshaller = unmarshallerPool.borrow(responseClass);
+        try {
+            return unmarshaller.unmarshal(reader, resultClass).getValue();
+        } finally {
+            unmarshallerPool.release(responseClass, unmarshaller);
+        }
+    }
+
+    /**
+     * A query of a batch.
+     *
+     * @param <R> the RESULT class of the object type
+     */
+    public static class Entry<R> {
+
+        private final ObjectType<R> mObjectType;
+        private final String mQuery;
+        private volatile List<R> mResults;
+
+        private Entry(ObjectType<R> objectType, String query) {
+            mObjectType = objectType;
+            mQuery = query;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public ObjectType<R> getObjectType() {
+            return mObjectType;
+        }
+
+        /**
+         *
+         * @return A list of <code>results</code>. Remember to check info and errors.
+         * @throws IllegalStateException if the batch has not been executed
+         */
+        public List<R> getResults() {
+            if (mResults == null) {
+                throw new IllegalStateException("The batch has not been executed");
+            }
+
+            return mResults;
+        }
+    }
+}
@@ -0,0 +1,754 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Downloads all objects of a query by splitting it into shards, sent concurrently.
+ * <p>
+ * A {@link Sharding} either adds one filter condition per shard, e.g. per county or road number range, or pages through the objects with
+ * <code>limit</code> and <code>skip</code>. At most <code>parallelism</code> shards are in flight at once. A failed shard, including one
+ * answered with an ERROR, is sent again up to the maximum number of shard attempts without restarting the others. The results are merged
+ * in shard order.</p>
+ * <p>
+ * With a checkpoint directory the response of each completed shard is saved along with a manifest, and a new execution after a failure
+ * resumes from them. A resumed shard whose object count differs from the manifest is downloaded again. {@link #execute(java.io.File)}
+ * publishes the merged results atomically once all shards are in, their object counts match the manifest and the published file holds
+ * their total. A page coming back full where paging had ended, or objects past the last page, fail the download instead of truncating
+ * it, and clear the checkpoint.</p>
+ *
+ * <pre>
+ * BulkDownload&lt;...roaddata.v1.RESULT&gt; download = trafficInformation.createBulkDownload(ObjectType.ROAD_DATA, null, null,
+ *         BulkDownload.Sharding.byCounty("County"));
+ * download.setParallelism(6);
+ * List&lt;...roaddata.v1.RESULT&gt; results = download.execute();
+ * </pre>
+ *
+ * @param <R> the RESULT class of the object type
+ * @author Patrik Karlström
+ */
+public class BulkDownload<R> {
+
+    /**
+     * The county numbers of Sweden.
+     */
+    public static final List<Integer> COUNTIES = List.of(1, 3, 4, 5, 6, 7, 8, 9, 10, 12, 13, 14, 17, 18, 19, 20, 21, 22, 23, 24, 25);
+    private static final Pattern FILTER_PATTERN = Pattern.compile("<FILTER\\s*/>|<FILTER>(.*?)</FILTER>", Pattern.DOTALL);
+    private static final Logger LOGGER = Logger.getLogger(BulkDownload.class.getName());
+
+    private File mCheckpointDirectory;
+    private final ObjectType<R> mObjectType;
+    private int mParallelism = 4;
+    private final TreeMap<String, String> mQueryAttributes;
+    private final String mQueryDetails;
+    private final LongAdder mResumedShards = new LongAdder();
+    private Duration mRetryDelay = Duration.ofSeconds(1);
+    private int mShardAttempts = 3;
+    private final LongAdder mShardRetries = new LongAdder();
+    private final LongAdder mShards = new LongAdder();
+    private final Sharding mSharding;
+    private final TrafficInformation mTrafficInformation;
+
+    BulkDownload(TrafficInformation trafficInformation, ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails, Sharding sharding) {
+        mTrafficInformation = trafficInformation;
+        mObjectType = objectType;
+        mQueryAttributes = queryAttributes;
+        mQueryDetails = queryDetails;
+        mSharding = sharding;
+        sharding.validate(objectType);
+    }
+
+    /**
+     * Adds a filter condition to the query details, combined with AND with an existing FILTER.
+     *
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @param condition
+     * @return
+     */
+    static String addFilter(String queryDetails, String condition) {
+        if (queryDetails == null || queryDetails.isBlank()) {
+            return "<FILTER>" + condition + "</FILTER>";
+        }
+
+        Matcher matcher = FILTER_PATTERN.matcher(queryDetails);
+        if (!matcher.find()) {
+            return "<FILTER>" + condition + "</FILTER>" + queryDetails;
+        }
+
+        String filter = matcher.group(1) == null || matcher.group(1).isBlank()
+                ? "<FILTER>" + condition + "</FILTER>"
+                : "<FILTER><AND>" + condition + matcher.group(1) + "</AND></FILTER>";
+
+        return queryDetails.substring(0, matcher.start()) + filter + queryDetails.substring(matcher.end());
+    }
+
+    /**
+     * Downloads all shards.
+     *
+     * @return the results of all shards, in shard order
+     * @throws IOException if a shard failed on all attempts
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public List<R> execute() throws IOException, InterruptedException, JAXBException {
+        return TrafficInformation.join(executeAsync());
+    }
+
+    /**
+     * Downloads all shards and publishes the merged RESPONSE to a file. The file is written next to the target and moved in place
+     * atomically, once every shard is in and the file holds as many objects as the shards. A checkpoint directory is cleared after
+     * publishing.
+     *
+     * @param target the file to publish
+     * @return the results of all shards, in shard order
+     * @throws IOException if a shard failed on all attempts, or if the object counts differ
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public List<R> execute(File target) throws IOException, InterruptedException, JAXBException {
+        Run run = new Run();
+        List<R> results = TrafficInformation.join(run.start());
+        publish(results, run.mTotal, target);
+        if (run.mCheckpoint != null) {
+            run.mCheckpoint.clear();
+        }
+
+        return results;
+    }
+
+    /**
+     * Downloads all shards without blocking the calling thread.
+     *
+     * @return the future results of all shards, in shard order
+     */
+    public CompletableFuture<List<R>> executeAsync() {
+        return new Run().start();
+    }
+
+    /**
+     *
+     * @return the working directory, or <code>null</code>
+     */
+    public File getCheckpointDirectory() {
+        return mCheckpointDirectory;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ObjectType<R> getObjectType() {
+        return mObjectType;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getRetryDelay() {
+        return mRetryDelay;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getShardAttempts() {
+        return mShardAttempts;
+    }
+
+    /**
+     *
+     * @return the number of shards loaded from the checkpoint of an earlier execution
+     */
+    public long getResumedShards() {
+        return mResumedShards.sum();
+    }
+
+    /**
+     *
+     * @return the number of shards sent again
+     */
+    public long getShardRetries() {
+        return mShardRetries.sum();
+    }
+
+    /**
+     *
+     * @return the number of downloaded shards
+     */
+    public long getShards() {
+        return mShards.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Sharding getSharding() {
+        return mSharding;
+    }
+
+    /**
+     * Sets the working directory keeping completed shards, <code>null</code> (the default) keeps them in memory only.
+     * <p>
+     * An execution interrupted by a failure resumes from the completed shards when run again with the same query and sharding.</p>
+     *
+     * @param checkpointDirectory
+     */
+    public void setCheckpointDirectory(File checkpointDirectory) {
+        mCheckpointDirectory = checkpointDirectory;
+    }
+
+    /**
+     * Sets the maximum number of shards in flight, the default is 4.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Sets the delay before the second attempt of a shard, growing linearly with the attempts. The default is one second.
+     *
+     * @param retryDelay
+     */
+    public void setRetryDelay(Duration retryDelay) {
+        mRetryDelay = retryDelay;
+    }
+
+    /**
+     * Sets the maximum number of attempts per shard, the default is 3.
+     *
+     * @param shardAttempts
+     */
+    public void setShardAttempts(int shardAttempts) {
+        if (shardAttempts < 1) {
+            throw new IllegalArgumentException("Invalid shard attempts: " + shardAttempts);
+        }
+        mShardAttempts = shardAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, shards=%d, resumedShards=%d, shardRetries=%d", mObjectType, getShards(), getResumedShards(), getShardRetries());
+    }
+
+    /**
+     * Counts the elements of the RESULT elements of a saved RESPONSE, other than INFO and ERROR.
+     */
+    private static long countObjects(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            XMLStreamReader reader = TrafficInformation.createXMLStreamReader(inputStream);
+            try {
+                long count = 0;
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 3 && !"INFO".equals(reader.getLocalName()) && !"ERROR".equals(reader.getLocalName())) {
+                            count++;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+
+                return count;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static <P> JAXBElement<P> createElement(Class<P> responseClass, Object response) {
+        return new JAXBElement<>(new QName("RESPONSE"), responseClass, responseClass.cast(response));
+    }
+
+    /**
+     * Identifies the query and sharding, so that a checkpoint is not resumed by another download.
+     */
+    private String getFingerprint() {
+        StringBuilder builder = new StringBuilder()
+                .append(mObjectType.getName()).append('\n')
+                .append(mObjectType.getSchemaVersion()).append('\n')
+                .append(mQueryAttributes).append('\n')
+                .append(mQueryDetails).append('\n')
+                .append(mSharding.mConditions).append('\n')
+                .append(mSharding.mPageSize);
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void publish(List<R> results, long total, File target) throws IOException, JAXBException {
+        Class<?> responseClass = mObjectType.getResponseClass();
+        Object response;
+        try {
+            response = responseClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        mObjectType.getResults(response).addAll(results);
+
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path tmp = Files.createTempFile(targetPath.getParent(), target.getName(), ".tmp");
+        try {
+            Marshaller marshaller = mTrafficInformation.getUnmarshallerPool().getContext(responseClass).createMarshaller();
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                marshaller.marshal(createElement(responseClass, response), outputStream);
+            }
+
+            long count = countObjects(tmp);
+            if (count != total) {
+                throw new IOException(String.format("The merged %s holds %d objects, the shards %d", mObjectType, count, total));
+            }
+            Checkpoint.move(tmp, targetPath);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * How a query is split into shards.
+     */
+    public static class Sharding {
+
+        private final List<String> mConditions;
+        private final String mCountyField;
+        private final int mPageSize;
+
+        private Sharding(List<String> conditions, int pageSize) {
+            this(conditions, pageSize, null);
+        }
+
+        private Sharding(List<String> conditions, int pageSize, String countyField) {
+            mConditions = conditions;
+            mPageSize = pageSize;
+            mCountyField = countyField;
+        }
+
+        /**
+         * One shard per county of {@link #COUNTIES}, and one for any other county number.
+         * <p>
+         * The field must hold one county per object, like the <code>County</code> of the road surface types. A <code>CountyNo</code> list,
+         * as of Camera or Situation Deviation, would put an object in the shard of each of its counties and leave out objects without a
+         * county, so such fields are rejected when the download is created. Shard those by conditions or pages instead.</p>
+         *
+         * @param fieldName the name of a single-valued county field, e.g. <code>County</code>
+         * @return
+         */
+        public static Sharding byCounty(String fieldName) {
+            ArrayList<String> conditions = new ArrayList<>();
+            for (Integer county : COUNTIES) {
+                conditions.add(String.format("<EQ name=\"%s\" value=\"%d\" />", fieldName, county));
+            }
+            conditions.add(String.format("<NOTIN name=\"%s\" value=\"%s\" />", fieldName, COUNTIES.stream().map(String::valueOf).collect(Collectors.joining(","))));
+
+            return new Sharding(conditions, 0, fieldName);
+        }
+
+        /**
+         * One shard per filter condition. Together the conditions must cover all objects exactly once.
+         *
+         * @param conditions e.g. <code>&lt;EQ name="RoadMainNumber" value="40" /&gt;</code>
+         * @return
+         */
+        public static Sharding byConditions(List<String> conditions) {
+            if (conditions.isEmpty()) {
+                throw new IllegalArgumentException("No conditions");
+            }
+
+            return new Sharding(new ArrayList<>(conditions), 0);
+        }
+
+        /**
+         * Pages through the objects. The query should have an <code>orderby</code> attribute, so that the pages are stable. Pages are sent
+         * ahead until one comes back short.
+         *
+         * @param pageSize the value of the limit attribute
+         * @return
+         */
+        public static Sharding byPage(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Invalid page size: " + pageSize);
+            }
+
+            return new Sharding(null, pageSize);
+        }
+
+        /**
+         * One shard per range of a numeric field. The first shard also gets the values below <code>from</code> and the last one those at or
+         * above <code>to</code>.
+         *
+         * @param fieldName e.g. <code>RoadMainNumber</code>
+         * @param from
+         * @param to
+         * @param step
+         * @return
+         */
+        public static Sharding byRange(String fieldName, long from, long to, long step) {
+            if (step < 1 || to <= from) {
+                throw new IllegalArgumentException(String.format("Invalid range: from=%d, to=%d, step=%d", from, to, step));
+            }
+
+            ArrayList<String> conditions = new ArrayList<>();
+            for (long lower = from; lower < to; lower += step) {
+                long upper = Math.min(lower + step, to);
+                String gte = String.format("<GTE name=\"%s\" value=\"%d\" />", fieldName, lower);
+                String lt = String.format("<LT name=\"%s\" value=\"%d\" />", fieldName, upper);
+                if (lower == from && upper == to) {
+                    conditions.add("<OR>" + lt + "<GTE name=\"" + fieldName + "\" value=\"" + from + "\" /></OR>");
+                } else if (lower == from) {
+                    conditions.add(lt);
+                } else if (upper == to) {
+                    conditions.add(gte);
+                } else {
+                    conditions.add("<AND>" + gte + lt + "</AND>");
+                }
+            }
+
+            return new Sharding(conditions, 0);
+        }
+
+        /**
+         *
+         * @return the filter conditions, or <code>null</code> if paging
+         */
+        public List<String> getConditions() {
+            return mConditions == null ? null : Collections.unmodifiableList(mConditions);
+        }
+
+        /**
+         *
+         * @return the page size, or 0 if not paging
+         */
+        public int getPageSize() {
+            return mPageSize;
+        }
+
+        boolean isPaging() {
+            return mConditions == null;
+        }
+
+        void validate(ObjectType<?> objectType) {
+            if (mCountyField == null) {
+                return;
+            }
+
+            Class<?> objectClass = objectType.getObjectClass();
+            Field field = Projection.getElements(objectClass).get(mCountyField);
+            if (field == null) {
+                throw new IllegalArgumentException(String.format("%s has no field %s", objectClass.getSimpleName(), mCountyField));
+            } else if (Collection.class.isAssignableFrom(field.getType())) {
+                throw new IllegalArgumentException(String.format("%s.%s holds several counties, it can not be sharded by county", objectClass.getSimpleName(), mCountyField));
+            }
+        }
+    }
+
+    /**
+     * One execution, workers take the next shard until there are none left.
+     */
+    private class Run {
+
+        private Checkpoint mCheckpoint;
+        private final ConcurrentSkipListMap<Integer, Integer> mCounts = new ConcurrentSkipListMap<>();
+        private final AtomicBoolean mFailed = new AtomicBoolean();
+        private volatile int mLastPage = Integer.MAX_VALUE;
+        private final AtomicInteger mNextShard = new AtomicInteger();
+        private final CompletableFuture<List<R>> mResult = new CompletableFuture<>();
+        private final ConcurrentSkipListMap<Integer, List<R>> mResults = new ConcurrentSkipListMap<>();
+        private long mTotal;
+        private final AtomicInteger mWorkers = new AtomicInteger();
+
+        private void complete(int shard, int attempt, boolean resumed, List<R> results, Throwable ex) {
+            if (ex == null) {
+                for (R result : results) {
+                    String error = mObjectType.getError(result);
+                    if (error != null) {
+                        ex = new IOException(error);
+                        break;
+                    }
+                }
+            }
+
+            int count = 0;
+            if (ex == null) {
+                count = count(results);
+                boolean lastPage = mSharding.isPaging() && count < mSharding.mPageSize;
+                try {
+                    if (mCheckpoint != null && !resumed) {
+                        mCheckpoint.complete(shard, count);
+                        if (lastPage) {
+                            mCheckpoint.setLastPage(Math.min(mLastPage, shard));
+                        }
+                    }
+                } catch (IOException checkpointEx) {
+                    fail(new IOException("The checkpoint could not be written", checkpointEx));
+                    return;
+                }
+
+                if (lastPage) {
+                    synchronized (this) {
+                        mLastPage = Math.min(mLastPage, shard);
+                    }
+                }
+            }
+
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (attempt < mShardAttempts && !mFailed.get()) {
+                    LOGGER.log(Level.FINE, String.format("Shard %d of %s failed, attempt %d", shard, mObjectType, attempt), cause);
+                    mShardRetries.increment();
+                    CompletableFuture.delayedExecutor(mRetryDelay.toMillis() * attempt, TimeUnit.MILLISECONDS, mTrafficInformation.getExecutor())
+                            .execute(() -> fetch(shard, attempt + 1));
+                } else {
+                    fail(new IOException(String.format("Shard %d of %s failed after %d attempts", shard, mObjectType, attempt), cause));
+                }
+                return;
+            }
+
+            if (resumed) {
+                mResumedShards.increment();
+            } else {
+                mShards.increment();
+            }
+            mCounts.put(shard, count);
+            mResults.put(shard, results);
+            next();
+        }
+
+        private int count(List<R> results) {
+            int count = 0;
+            for (R result : results) {
+                count += mObjectType.getObjects(result).size();
+            }
+
+            return count;
+        }
+
+        private void fail(IOException ex) {
+            mFailed.set(true);
+            mResult.completeExceptionally(ex);
+        }
+
+        private void fetch(int shard, int attempt) {
+            CompletableFuture<List<R>> future = resume(shard);
+            boolean resumed = future != null;
+            if (!resumed) {
+                TreeMap<String, String> queryAttributes = mTrafficInformation.createQueryAttributes();
+                if (mQueryAttributes != null) {
+                    queryAttributes.putAll(mQueryAttributes);
+                }
+
+                String queryDetails;
+                if (mSharding.isPaging()) {
+                    queryAttributes.put("limit", Integer.toString(mSharding.mPageSize));
+                    queryAttributes.put("skip", Long.toString((long) shard * mSharding.mPageSize));
+                    queryDetails = mQueryDetails;
+                } else {
+                    queryDetails = addFilter(mQueryDetails, mSharding.mConditions.get(shard));
+                }
+
+                File file = mCheckpoint == null ? null : mCheckpoint.getShardFile(shard);
+                future = mTrafficInformation.getResultsAsync(mObjectType, queryAttributes, queryDetails, file);
+            }
+
+            future.whenComplete((results, ex) -> complete(shard, attempt, resumed, results, ex));
+        }
+
+        /**
+         * Merges the results once every shard is in, verifying that none is missing, that the object counts match the manifest and that
+         * paging ended on a short page.
+         */
+        private void finish() {
+            int shardCount = mSharding.isPaging() ? mLastPage + 1 : mSharding.mConditions.size();
+            ArrayList<R> merged = new ArrayList<>();
+            long total = 0;
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<R> results = mResults.get(shard);
+                if (results == null) {
+                    fail(new IOException(String.format("Shard %d of %s is missing", shard, mObjectType)));
+                    return;
+                }
+
+                int count = mCounts.get(shard);
+                Integer recorded = mCheckpoint == null ? Integer.valueOf(count) : mCheckpoint.getCount(shard);
+                if (recorded == null || recorded != count) {
+                    fail(new IOException(String.format("Shard %d of %s holds %d objects, the manifest records %s", shard, mObjectType, count, recorded)));
+                    return;
+                }
+
+                if (mSharding.isPaging() && shard == shardCount - 1 && count >= mSharding.mPageSize) {
+                    restart(new IOException(String.format("The last page %d of %s came back full, the objects changed since it was known", shard, mObjectType)));
+                    return;
+                }
+                total += count;
+                merged.addAll(results);
+            }
+
+            if (mSharding.isPaging()) {
+                for (Map.Entry<Integer, Integer> entry : mCounts.tailMap(shardCount).entrySet()) {
+                    if (entry.getValue() > 0) {
+                        restart(new IOException(String.format("Page %d of %s holds %d objects past the last page %d, the objects changed while paging",
+                                entry.getKey(), mObjectType, entry.getValue(), shardCount - 1)));
+                        return;
+                    }
+                }
+            }
+
+            mTotal = total;
+            mResult.complete(merged);
+        }
+
+        private void next() {
+            int shard = mNextShard.getAndIncrement();
+            boolean done = mSharding.isPaging() ? shard > mLastPage : shard >= mSharding.mConditions.size();
+            if (mFailed.get() || done) {
+                if (mWorkers.decrementAndGet() == 0 && !mFailed.get()) {
+                    finish();
+                }
+            } else {
+                fetch(shard, 1);
+            }
+        }
+
+        /**
+         * Fails with pages that no longer line up, clearing the checkpoint so that the next execution starts over.
+         */
+        private void restart(IOException ex) {
+            if (mCheckpoint != null) {
+                try {
+                    mCheckpoint.clear();
+                } catch (IOException clearEx) {
+                    ex.addSuppressed(clearEx);
+                }
+            }
+            fail(ex);
+        }
+
+        /**
+         * Loads a shard completed by an earlier execution, verifying its object count.
+         *
+         * @return the future results, or <code>null</code> if the shard has to be downloaded
+         */
+        private CompletableFuture<List<R>> resume(int shard) {
+            Integer count = mCheckpoint == null ? null : mCheckpoint.getCount(shard);
+            File file = mCheckpoint == null ? null : mCheckpoint.getShardFile(shard);
+            if (count == null || !file.isFile()) {
+                return null;
+            }
+
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    List<R> results = mTrafficInformation.getResults(mObjectType, file);
+                    int actual = count(results);
+                    if (actual != count) {
+                        mCheckpoint.invalidate(shard);
+                        throw new IOException(String.format("%s holds %d objects, %d expected", file, actual, count));
+                    }
+
+                    return results;
+                } catch (IOException | InterruptedException | JAXBException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, mTrafficInformation.getExecutor());
+        }
+
+        private CompletableFuture<List<R>> start() {
+            if (mCheckpointDirectory != null) {
+                try {
+                    mCheckpoint = new Checkpoint(mCheckpointDirectory, getFingerprint());
+                    Integer lastPage = mCheckpoint.getLastPage();
+                    if (lastPage != null) {
+                        mLastPage = lastPage;
+                    }
+                } catch (IOException ex) {
+                    return CompletableFuture.failedFuture(ex);
+                }
+            }
+
+            int workers = mSharding.isPaging() ? mParallelism : Math.min(mParallelism, mSharding.mConditions.size());
+            mWorkers.set(workers);
+            for (int i = 0; i < workers; i++) {
+                next();
+            }
+
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Keeps an in-memory view of a query up to date by asking only for the changes since the last poll.
+ * <p>
+ * The first poll is sent with <code>changeid="0"</code> and gets the full result. The LASTCHANGEID of its INFO is sent with the next poll,
+ * which gets the changed objects only. Changed objects replace the ones with the same key in the view, objects flagged as deleted are
+ * removed.</p>
+ *
+ * <pre>
+ * ChangePoller&lt;RESULT, TrainAnnouncement, String&gt; poller = new ChangePoller&lt;&gt;(trafficInformation,
+ *         ObjectType.TRAIN_ANNOUNCEMENT, null, filter,
+ *         RESULT::getTrainAnnouncement,
+ *         TrainAnnouncement::getActivityId,
+ *         announcement -&gt; Boolean.TRUE.equals(announcement.isDeleted()));
+ * poller.poll();
+ * poller.getView();
+ * </pre>
+ *
+ * @param <R> the RESULT class of the object type
+ * @param <E> the object class
+ * @param <K> the key class of the objects
+ * @author Patrik Karlström
+ */
+public class ChangePoller<R, E, K> {
+
+    private static final String CHANGE_ID = "changeid";
+    private static final String INITIAL_CHANGE_ID = "0";
+
+    private String mChangeId = INITIAL_CHANGE_ID;
+    private final Predicate<E> mDeletedPredicate;
+    private final Function<R, List<E>> mElementsFunction;
+    private final Function<E, K> mKeyFunction;
+    private final ObjectType<R> mObjectType;
+    private final TreeMap<String, String> mQueryAttributes;
+    private final String mQueryDetails;
+    private final TrafficInformation mTrafficInformation;
+    private final ConcurrentHashMap<K, E> mView = new ConcurrentHashMap<>();
+
+    /**
+     * Class constructor.
+     *
+     * @param trafficInformation
+     * @param objectType
+     * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @param elementsFunction gets the objects of a RESULT
+     * @param keyFunction gets the key identifying an object between polls
+     * @param deletedPredicate tells if an object is a deletion
+     */
+    public ChangePoller(TrafficInformation trafficInformation, ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails,
+            Function<R, List<E>> elementsFunction, Function<E, K> keyFunction, Predicate<E> deletedPredicate) {
+        mTrafficInformation = trafficInformation;
+        mObjectType = objectType;
+        mQueryAttributes = trafficInformation.createQueryAttributes();
+        if (queryAttributes != null) {
+            mQueryAttributes.putAll(queryAttributes);
+        }
+        mQueryDetails = queryDetails;
+        mElementsFunction = elementsFunction;
+        mKeyFunction = keyFunction;
+        mDeletedPredicate = deletedPredicate;
+    }
+
+    /**
+     *
+     * @return the change id sent with the next poll
+     */
+    public synchronized String getChangeId() {
+        return mChangeId;
+    }
+
+    /**
+     *
+     * @return a live, unmodifiable view of the current objects by key
+     */
+    public Map<K, E> getView() {
+        return Collections.unmodifiableMap(mView);
+    }
+
+    /**
+     * Gets the changes since the last poll and merges them into the view.
+     *
+     * @return the changed objects, including deletions, in response order
+     * @throws IOException if a RESULT contains an ERROR
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public synchronized List<E> poll() throws IOException, InterruptedException, JAXBException {
+        TreeMap<String, String> queryAttributes = mTrafficInformation.createQueryAttributes();
+        queryAttributes.putAll(mQueryAttributes);
+        queryAttributes.put(CHANGE_ID, mChangeId);
+
+        List<R> results = mTrafficInformation.getResults(mObjectType, queryAttributes, mQueryDetails, null);
+        for (R result : results) {
+            String error = mObjectType.getError(result);
+            if (error != null) {
+                throw new IOException(error);
+            }
+        }
+
+        ArrayList<E> changes = new ArrayList<>();
+        String changeId = mChangeId;
+        for (R result : results) {
+            for (E element : mElementsFunction.apply(result)) {
+                K key = mKeyFunction.apply(element);
+                if (mDeletedPredicate.test(element)) {
+                    mView.remove(key);
+                } else {
+                    mView.put(key, element);
+                }
+                changes.add(element);
+            }
+
+            String lastChangeId = mObjectType.getLastChangeId(result);
+            if (lastChangeId != null) {
+                changeId = lastChangeId;
+            }
+        }
+        mChangeId = changeId;
+
+        return changes;
+    }
+
+    /**
+     * Clears the view, the next poll gets the full result.
+     */
+    public synchronized void reset() {
+        mChangeId = INITIAL_CHANGE_ID;
+        mView.clear();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * The progress of a bulk download, kept in a working directory.
+ * <p>
+ * Each completed shard has its response saved as <code>shard-N.xml</code> and its object count recorded in
+ * <code>manifest.properties</code>. The manifest is rewritten atomically after each shard. A manifest written for another query is
+ * discarded along with its shards.</p>
+ *
+ * @author Patrik Karlström
+ */
+class Checkpoint {
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String LAST_PAGE = "lastPage";
+    private static final String MANIFEST = "manifest.properties";
+
+    private final Path mDirectory;
+    private final Properties mManifest = new Properties();
+
+    /**
+     *
+     * @param directory the working directory, created if missing
+     * @param fingerprint identifies the query and sharding of the download
+     */
+    Checkpoint(File directory, String fingerprint) throws IOException {
+        mDirectory = directory.toPath();
+        Files.createDirectories(mDirectory);
+
+        Path manifest = mDirectory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            try (InputStream inputStream = Files.newInputStream(manifest)) {
+                mManifest.load(inputStream);
+            }
+        }
+
+        if (!fingerprint.equals(mManifest.getProperty(FINGERPRINT))) {
+            clear();
+            mManifest.setProperty(FINGERPRINT, fingerprint);
+            save();
+        }
+    }
+
+    /**
+     * Removes the manifest and all shard files, including partly written ones.
+     */
+    synchronized void clear() throws IOException {
+        mManifest.clear();
+        try (var paths = Files.list(mDirectory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (name.equals(MANIFEST) || name.equals(MANIFEST + ".tmp") || (name.startsWith("shard-") && (name.endsWith(".xml") || name.endsWith(".tmp")))) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a completed shard.
+     */
+    synchronized void complete(int shard, int count) throws IOException {
+        mManifest.setProperty(getCountKey(shard), Integer.toString(count));
+        save();
+    }
+
+    /**
+     *
+     * @return the recorded object count of a completed shard, or <code>null</code>
+     */
+    synchronized Integer getCount(int shard) {
+        String count = mManifest.getProperty(getCountKey(shard));
+
+        return count == null ? null : Integer.valueOf(count);
+    }
+
+    /**
+     *
+     * @return the last page of a paged download, or <code>null</code> if not yet known
+     */
+    synchronized Integer getLastPage() {
+        String lastPage = mManifest.getProperty(LAST_PAGE);
+
+        return lastPage == null ? null : Integer.valueOf(lastPage);
+    }
+
+    File getShardFile(int shard) {
+        return mDirectory.resolve(String.format("shard-%05d.xml", shard)).toFile();
+    }
+
+    /**
+     * Forgets a shard whose file did not match its record.
+     */
+    synchronized void invalidate(int shard) throws IOException {
+        mManifest.remove(getCountKey(shard));
+        save();
+    }
+
+    synchronized void setLastPage(int lastPage) throws IOException {
+        mManifest.setProperty(LAST_PAGE, Integer.toString(lastPage));
+        save();
+    }
+
+    /**
+     * Moves a file into place, atomically if the file system allows it.
+     */
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private String getCountKey(int shard) {
+        return "shard." + shard + ".count";
+    }
+
+    private void save() throws IOException {
+        Path tmp = mDirectory.resolve(MANIFEST + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmp)) {
+            mManifest.store(outputStream, "Bulk download checkpoint");
+        }
+        move(tmp, mDirectory.resolve(MANIFEST));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending requests to an endpoint while it is unhealthy.
+ * <p>
+ * Each endpoint has its own circuit. It opens after a number of consecutive failed attempts, connection failures or responses with HTTP
+ * 429 or 5xx, and requests then fail fast with an {@link OpenException}. When the open duration has passed a single trial request is let
+ * through, its success closes the circuit and its failure opens it again.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class CircuitBreaker {
+
+    private final ConcurrentHashMap<String, Circuit> mCircuits = new ConcurrentHashMap<>();
+    private final int mFailureThreshold;
+    private final LongSupplier mNanoTime;
+    private final Duration mOpenDuration;
+    private final LongAdder mOpened = new LongAdder();
+    private final LongAdder mRejected = new LongAdder();
+
+    /**
+     * Class constructor.
+     *
+     * @param failureThreshold the number of consecutive failures opening a circuit
+     * @param openDuration for how long an opened circuit rejects requests
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+        if (failureThreshold < 1 || openDuration.isNegative()) {
+            throw new IllegalArgumentException(String.format("Invalid circuit breaker: failureThreshold=%d, openDuration=%s", failureThreshold, openDuration));
+        }
+        mFailureThreshold = failureThreshold;
+        mOpenDuration = openDuration;
+        mNanoTime = nanoTime;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getFailureThreshold() {
+        return mFailureThreshold;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getOpenDuration() {
+        return mOpenDuration;
+    }
+
+    /**
+     *
+     * @return the number of times a circuit was opened
+     */
+    public long getOpened() {
+        return mOpened.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests rejected by an open circuit
+     */
+    public long getRejected() {
+        return mRejected.sum();
+    }
+
+    /**
+     *
+     * @param endpoint
+     * @return the state of the circuit of the endpoint
+     */
+    public State getState(String endpoint) {
+        Circuit circuit = mCircuits.get(endpoint);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+
+        synchronized (circuit) {
+            if (circuit.mState == State.OPEN && mNanoTime.getAsLong() - circuit.mOpenUntil >= 0) {
+                return State.HALF_OPEN;
+            }
+
+            return circuit.mState;
+        }
+    }
+
+    /**
+     * Closes all circuits.
+     */
+    public void reset() {
+        mCircuits.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("opened=%d, rejected=%d", getOpened(), getRejected());
+    }
+
+    /**
+     * Lets a request through or rejects it. A request let through must be followed by {@link #record(String, boolean)} or
+     * {@link #cancel(String)}.
+     */
+    void acquire(String endpoint) throws OpenException {
+        Circuit circuit = mCircuits.computeIfAbsent(endpoint, k -> new Circuit());
+        synchronized (circuit) {
+            switch (circuit.mState) {
+                case CLOSED:
+                    return;
+
+                case OPEN:
+                    if (mNanoTime.getAsLong() - circuit.mOpenUntil >= 0) {
+                        circuit.mState = State.HALF_OPEN;
+                        circuit.mTrial = true;
+                        return;
+                    }
+                    break;
+
+                case HALF_OPEN:
+                    if (!circuit.mTrial) {
+                        circuit.mTrial = true;
+                        return;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        mRejected.increment();
+        throw new OpenException(String.format("The circuit of %s is open", endpoint));
+    }
+
+    /**
+     * Called when a request let through was never sent.
+     */
+    void cancel(String endpoint) {
+        Circuit circuit = mCircuits.get(endpoint);
+        if (circuit != null) {
+            synchronized (circuit) {
+                circuit.mTrial = false;
+            }
+        }
+    }
+
+    /**
+     * Called with the outcome of a request let through.
+     */
+    void record(String endpoint, boolean success) {
+        Circuit circuit = mCircuits.computeIfAbsent(endpoint, k -> new Circuit());
+        synchronized (circuit) {
+            circuit.mTrial = false;
+            if (success) {
+                circuit.mFailures = 0;
+                circuit.mState = State.CLOSED;
+            } else if (circuit.mState == State.HALF_OPEN || ++circuit.mFailures >= mFailureThreshold) {
+                if (circuit.mState != State.OPEN) {
+                    mOpened.increment();
+                }
+                circuit.mState = State.OPEN;
+                circuit.mOpenUntil = mNanoTime.getAsLong() + mOpenDuration.toNanos();
+            }
+        }
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN;
+    }
+
+    /**
+     * Thrown when a request is rejected by an open circuit.
+     */
+    public static class OpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Guarded by itself.
+     */
+    private static class Circuit {
+
+        private int mFailures;
+        private long mOpenUntil;
+        private State mState = State.CLOSED;
+        private boolean mTrial;
+    }
+}
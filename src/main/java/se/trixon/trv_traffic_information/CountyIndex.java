@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The county masks of a list of objects, computed once, for filtering by county with a bitwise AND.
+ * <p>
+ * Objects like Camera, Situation Deviation and WeatherStation carry their county numbers as a list. Testing those lists for every filter
+ * means walking boxed Integers each time, the index reduces each object to an int when it is created.</p>
+ * <pre>
+ * CountyIndex&lt;Camera&gt; index = CountyIndex.of(result.getCamera());
+ * List&lt;Camera&gt; cameras = index.filter(CountySet.of(1, 3));
+ * </pre>
+ *
+ * An index is immutable and may be shared between threads.
+ *
+ * @param <T> the object class
+ * @author Patrik Karlström
+ */
+public final class CountyIndex<T> {
+
+    private static final ConcurrentHashMap<Class<?>, MethodHandle> CLASS_TO_GETTER = new ConcurrentHashMap<>();
+    private static final String COUNTY_NO = "CountyNo";
+
+    private final CountySet mCounties;
+    private final int[] mMasks;
+    private final List<T> mObjects;
+
+    private CountyIndex(List<T> objects, int[] masks) {
+        mObjects = objects;
+        mMasks = masks;
+        int union = 0;
+        for (int mask : masks) {
+            union |= mask;
+        }
+        mCounties = CountySet.ofMask(union);
+    }
+
+    /**
+     * Indexes generated objects by their CountyNo field.
+     *
+     * @param <T> the object class
+     * @param objects
+     * @return
+     * @throws IllegalArgumentException if an object has no CountyNo field or a county number is out of range
+     */
+    public static <T> CountyIndex<T> of(Collection<? extends T> objects) {
+        return of(objects, CountyIndex::getCountyNos);
+    }
+
+    /**
+     * Indexes objects by the county numbers of the function.
+     *
+     * @param <T> the object class
+     * @param objects
+     * @param countyNos e.g. <code>Camera::getCountyNo</code>. It may return <code>null</code>.
+     * @return
+     * @throws IllegalArgumentException if a county number is out of range
+     */
+    public static <T> CountyIndex<T> of(Collection<? extends T> objects, Function<? super T, ? extends Collection<Integer>> countyNos) {
+        List<T> list = Collections.unmodifiableList(new ArrayList<>(objects));
+        int[] masks = new int[list.size()];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = CountySet.maskOf(countyNos.apply(list.get(i)));
+        }
+
+        return new CountyIndex<>(list, masks);
+    }
+
+    /**
+     *
+     * @param counties
+     * @return the number of objects in any of the counties
+     */
+    public int count(CountySet counties) {
+        int mask = counties.getMask();
+        int count = 0;
+        for (int objectMask : mMasks) {
+            if ((objectMask & mask) != 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     *
+     * @param counties
+     * @return the objects in any of the counties, in index order
+     */
+    public List<T> filter(CountySet counties) {
+        int mask = counties.getMask();
+        ArrayList<T> objects = new ArrayList<>();
+        for (int i = 0; i < mMasks.length; i++) {
+            if ((mMasks[i] & mask) != 0) {
+                objects.add(mObjects.get(i));
+            }
+        }
+
+        return Collections.unmodifiableList(objects);
+    }
+
+    /**
+     *
+     * @param countyNos
+     * @return the objects in any of the counties, in index order
+     */
+    public List<T> filter(int... countyNos) {
+        return filter(CountySet.of(countyNos));
+    }
+
+    /**
+     *
+     * @return the counties of all objects
+     */
+    public CountySet getCounties() {
+        return mCounties;
+    }
+
+    /**
+     *
+     * @param index
+     * @return the counties of the object at the index
+     */
+    public CountySet getCountySet(int index) {
+        return CountySet.ofMask(mMasks[index]);
+    }
+
+    /**
+     *
+     * @return the indexed objects
+     */
+    public List<T> getObjects() {
+        return mObjects;
+    }
+
+    /**
+     *
+     * @return the number of indexed objects
+     */
+    public int size() {
+        return mMasks.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Integer> getCountyNos(Object object) {
+        MethodHandle getter = CLASS_TO_GETTER.computeIfAbsent(object.getClass(), clazz -> {
+            Field field = Projection.getElements(clazz).get(COUNTY_NO);
+            if (field == null || !Collection.class.isAssignableFrom(field.getType())) {
+                throw new IllegalArgumentException(String.format("%s has no %s list", clazz.getSimpleName(), COUNTY_NO));
+            }
+
+            try {
+                return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                        .unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        });
+
+        try {
+            return (Collection<Integer>) (Object) getter.invokeExact(object);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of county numbers held as a bit mask.
+ * <p>
+ * The county numbers of Sweden are all below 32, so a set is one int and testing whether an object is in any of the wanted counties is a
+ * bitwise AND. See {@link CountyIndex} for filtering results.</p>
+ *
+ * @author Patrik Karlström
+ */
+public final class CountySet {
+
+    /**
+     * All counties of {@link BulkDownload#COUNTIES}.
+     */
+    public static final CountySet ALL = of(BulkDownload.COUNTIES);
+    /**
+     * No county.
+     */
+    public static final CountySet EMPTY = new CountySet(0);
+    /**
+     * The highest county number that fits in a set.
+     */
+    public static final int MAX_COUNTY_NO = 31;
+
+    private final int mMask;
+
+    private CountySet(int mask) {
+        mMask = mask;
+    }
+
+    /**
+     *
+     * @param countyNos the county numbers, <code>null</code> elements are ignored. <code>null</code> is valid.
+     * @return
+     * @throws IllegalArgumentException if a county number is outside 0 to {@link #MAX_COUNTY_NO}
+     */
+    public static CountySet of(Collection<Integer> countyNos) {
+        return ofMask(maskOf(countyNos));
+    }
+
+    /**
+     *
+     * @param countyNos
+     * @return
+     * @throws IllegalArgumentException if a county number is outside 0 to {@link #MAX_COUNTY_NO}
+     */
+    public static CountySet of(int... countyNos) {
+        int mask = 0;
+        for (int countyNo : countyNos) {
+            mask |= bit(countyNo);
+        }
+
+        return ofMask(mask);
+    }
+
+    /**
+     *
+     * @param mask bit n set for county number n
+     * @return
+     */
+    public static CountySet ofMask(int mask) {
+        return mask == 0 ? EMPTY : new CountySet(mask);
+    }
+
+    /**
+     *
+     * @param countyNo
+     * @return <code>true</code> if the county is in this set
+     */
+    public boolean contains(int countyNo) {
+        return countyNo >= 0 && countyNo <= MAX_COUNTY_NO && (mMask & (1 << countyNo)) != 0;
+    }
+
+    /**
+     *
+     * @param other
+     * @return <code>true</code> if every county of the other set is in this set
+     */
+    public boolean containsAll(CountySet other) {
+        return (mMask & other.mMask) == other.mMask;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CountySet && ((CountySet) obj).mMask == mMask;
+    }
+
+    /**
+     *
+     * @return bit n set for county number n
+     */
+    public int getMask() {
+        return mMask;
+    }
+
+    @Override
+    public int hashCode() {
+        return mMask;
+    }
+
+    /**
+     *
+     * @param other
+     * @return the counties in both sets
+     */
+    public CountySet intersection(CountySet other) {
+        return ofMask(mMask & other.mMask);
+    }
+
+    /**
+     *
+     * @param other
+     * @return <code>true</code> if the sets have any county in common
+     */
+    public boolean intersects(CountySet other) {
+        return (mMask & other.mMask) != 0;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return mMask == 0;
+    }
+
+    /**
+     *
+     * @return the number of counties
+     */
+    public int size() {
+        return Integer.bitCount(mMask);
+    }
+
+    /**
+     *
+     * @return the county numbers in ascending order
+     */
+    public List<Integer> toList() {
+        ArrayList<Integer> countyNos = new ArrayList<>(size());
+        for (int mask = mMask; mask != 0; mask &= mask - 1) {
+            countyNos.add(Integer.numberOfTrailingZeros(mask));
+        }
+
+        return Collections.unmodifiableList(countyNos);
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     *
+     * @param other
+     * @return the counties in either set
+     */
+    public CountySet union(CountySet other) {
+        return ofMask(mMask | other.mMask);
+    }
+
+    static int maskOf(Collection<Integer> countyNos) {
+        int mask = 0;
+        if (countyNos != null) {
+            for (Integer countyNo : countyNos) {
+                if (countyNo != null) {
+                    mask |= bit(countyNo);
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    private static int bit(int countyNo) {
+        if (countyNo < 0 || countyNo > MAX_COUNTY_NO) {
+            throw new IllegalArgumentException("County number out of range: " + countyNo);
+        }
+
+        return 1 << countyNo;
+    }
+}
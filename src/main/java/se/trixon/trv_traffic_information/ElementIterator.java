@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Iterates over the object elements of a RESPONSE, unmarshalling one element at a time.
+ * <p>
+ * Only elements directly below a RESULT are considered, so nested elements sharing the name are left to their parent. An ERROR in a RESULT
+ * is thrown as an {@link UncheckedIOException}, as are parse failures.</p>
+ *
+ * @author Patrik Karlström
+ */
+class ElementIterator<E> implements Iterator<E>, Closeable {
+
+    private static final int ELEMENT_DEPTH = 3;
+
+    private boolean mClosed;
+    private int mDepth;
+    private final Class<E> mElementClass;
+    private final String mElementName;
+    private final InputStream mInputStream;
+    private E mNext;
+    private final Class<?> mPoolClass;
+    private boolean mPositioned;
+    private final XMLStreamReader mReader;
+    private final Unmarshaller mUnmarshaller;
+    private final UnmarshallerPool mUnmarshallerPool;
+
+    /**
+     *
+     * @param inputStream the RESPONSE document, closed with the iterator
+     * @param unmarshallerPool
+     * @param poolClass the class used as key in the pool, its context must know the element class
+     * @param elementName the local name of the object elements
+     * @param elementClass
+     * @param direct read the elements with the generated StAX readers rather than JAXB, if there is one for the element class
+     */
+    ElementIterator(InputStream inputStream, UnmarshallerPool unmarshallerPool, Class<?> poolClass, String elementName, Class<E> elementClass, boolean direct) throws IOException, JAXBException {
+        mInputStream = inputStream;
+        mUnmarshallerPool = unmarshallerPool;
+        mPoolClass = poolClass;
+        mElementName = elementName;
+        mElementClass = elementClass;
+
+        if (direct && StaxUnmarshaller.canUnmarshal(elementClass)) {
+            mUnmarshaller = null;
+        } else {
+            try {
+                mUnmarshaller = unmarshallerPool.borrow(poolClass);
+            } catch (JAXBException ex) {
+                inputStream.close();
+                throw ex;
+            }
+        }
+
+        try {
+            mReader = TrafficInformation.createXMLStreamReader(inputStream);
+        } catch (IOException ex) {
+            releaseUnmarshaller();
+            inputStream.close();
+            throw ex;
+        } catch (XMLStreamException ex) {
+            releaseUnmarshaller();
+            inputStream.close();
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+        releaseUnmarshaller();
+        try {
+            mReader.close();
+        } catch (XMLStreamException ex) {
+            //nvm
+        }
+
+        try {
+            mInputStream.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mNext == null && !mClosed) {
+            try {
+                mNext = advance();
+            } catch (IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            } catch (XMLStreamException | JAXBException ex) {
+                close();
+                throw new UncheckedIOException(new IOException(ex));
+            }
+
+            if (mNext == null) {
+                close();
+            }
+        }
+
+        return mNext != null;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        E next = mNext;
+        mNext = null;
+
+        return next;
+    }
+
+    /**
+     *
+     * @return a sequential stream of the remaining elements, closing it closes the iterator
+     */
+    Stream<E> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    private E advance() throws IOException, JAXBException, XMLStreamException {
+        while (true) {
+            int event;
+            if (mPositioned) {
+                // The unmarshaller leaves the reader on the event following the element
+                mPositioned = false;
+                event = mReader.getEventType();
+            } else if (mReader.hasNext()) {
+                event = mReader.next();
+            } else {
+                return null;
+            }
+
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    mDepth++;
+                    if (mDepth == ELEMENT_DEPTH) {
+                        String name = mReader.getLocalName();
+                        if (mElementName.equals(name)) {
+                            E element;
+                            if (mUnmarshaller == null) {
+                                element = StaxUnmarshaller.unmarshal(mElementClass, mReader, mUnmarshallerPool.getListener());
+                            } else {
+                                element = mUnmarshaller.unmarshal(mReader, mElementClass).getValue();
+                            }
+                            mDepth--;
+                            mPositioned = true;
+
+                            return element;
+                        } else if ("ERROR".equals(name)) {
+                            throw readError();
+                        }
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    mDepth--;
+                    break;
+
+                case XMLStreamConstants.END_DOCUMENT:
+                    return null;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    private IOException readError() throws XMLStreamException {
+        String source = "";
+        String message = "";
+        while (mReader.hasNext()) {
+            int event = mReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = mReader.getLocalName();
+                if ("SOURCE".equals(name)) {
+                    source = mReader.getElementText();
+                } else if ("MESSAGE".equals(name)) {
+                    message = mReader.getElementText();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "ERROR".equals(mReader.getLocalName())) {
+                break;
+            }
+        }
+
+        return new IOException(String.format("%s: %s", source, message));
+    }
+
+    private void releaseUnmarshaller() {
+        if (mUnmarshaller != null) {
+            mUnmarshallerPool.release(mPoolClass, mUnmarshaller);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A condition of the FILTER of a {@link Query}.
+ * <p>
+ * Values are literals, escaped once when the query is built, or {@link Query.Param parameters} substituted on each call.</p>
+ *
+ * <pre>
+ * Filter filter = Filter.and(
+ *         Filter.eq("LocationSignature", Query.param("station")),
+ *         Filter.gt("AdvertisedTimeAtLocation", "$dateadd(-00:15:00)"));
+ * </pre>
+ *
+ * @author Patrik Karlström
+ */
+public final class Filter {
+
+    private final List<Object> mAttributes;
+    private final List<Filter> mChildren;
+    private final String mOperator;
+
+    private Filter(String operator, List<Object> attributes, List<Filter> children) {
+        mOperator = operator;
+        mAttributes = attributes;
+        mChildren = children;
+    }
+
+    /**
+     *
+     * @param filters
+     * @return a condition met by objects meeting all conditions
+     */
+    public static Filter and(Filter... filters) {
+        return group("AND", filters);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter eq(String name, Object value) {
+        return operator("EQ", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param exists
+     * @return
+     */
+    public static Filter exists(String name, boolean exists) {
+        return operator("EXISTS", name, exists);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter gt(String name, Object value) {
+        return operator("GT", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter gte(String name, Object value) {
+        return operator("GTE", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param values
+     * @return a condition met by objects with any of the values
+     */
+    public static Filter in(String name, Object... values) {
+        return operator("IN", name, join(values));
+    }
+
+    /**
+     *
+     * @param name
+     * @param value a regular expression
+     * @return
+     */
+    public static Filter like(String name, Object value) {
+        return operator("LIKE", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter lt(String name, Object value) {
+        return operator("LT", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter lte(String name, Object value) {
+        return operator("LTE", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Filter ne(String name, Object value) {
+        return operator("NE", name, value);
+    }
+
+    /**
+     *
+     * @param filters
+     * @return a condition met by objects not meeting the conditions
+     */
+    public static Filter not(Filter... filters) {
+        return group("NOT", filters);
+    }
+
+    /**
+     *
+     * @param name
+     * @param values
+     * @return a condition met by objects with none of the values
+     */
+    public static Filter notIn(String name, Object... values) {
+        return operator("NOTIN", name, join(values));
+    }
+
+    /**
+     *
+     * @param filters
+     * @return a condition met by objects meeting any of the conditions
+     */
+    public static Filter or(Filter... filters) {
+        return group("OR", filters);
+    }
+
+    /**
+     * A geometry within a box.
+     *
+     * @param name e.g. <code>Geometry.SWEREF99TM</code>
+     * @param corners two corner points, e.g. <code>"674130 6579686, 675130 6580686"</code>
+     * @return
+     */
+    public static Filter withinBox(String name, Object corners) {
+        return new Filter("WITHIN", List.of("name", name, "shape", "box", "value", corners), null);
+    }
+
+    /**
+     * A geometry within a circle.
+     *
+     * @param name e.g. <code>Geometry.SWEREF99TM</code>
+     * @param center the center point, e.g. <code>"674130 6579686"</code>
+     * @param radius the radius in meters, or followed by <code>km</code>
+     * @return
+     */
+    public static Filter withinCenter(String name, Object center, Object radius) {
+        return new Filter("WITHIN", List.of("name", name, "shape", "center", "value", center, "radius", radius), null);
+    }
+
+    /**
+     * A geometry within a polygon.
+     *
+     * @param name e.g. <code>Geometry.SWEREF99TM</code>
+     * @param points the points, e.g. <code>"674130 6579686, 675130 6579686, 675130 6580686"</code>
+     * @return
+     */
+    public static Filter withinPolygon(String name, Object points) {
+        return new Filter("WITHIN", List.of("name", name, "shape", "polygon", "value", points), null);
+    }
+
+    @Override
+    public String toString() {
+        Query.Template template = new Query.Template();
+        write(template);
+
+        return template.toString();
+    }
+
+    void write(Query.Template template) {
+        template.append("<").append(mOperator);
+        for (int i = 0; i < mAttributes.size(); i += 2) {
+            template.append(" ").append((String) mAttributes.get(i)).append("=\"").appendValue(mAttributes.get(i + 1)).append("\"");
+        }
+
+        if (mChildren == null) {
+            template.append(" />");
+        } else {
+            template.append(">");
+            for (Filter child : mChildren) {
+                child.write(template);
+            }
+            template.append("</").append(mOperator).append(">");
+        }
+    }
+
+    private static Filter group(String operator, Filter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException(operator + " needs at least one condition");
+        }
+
+        return new Filter(operator, List.of(), List.copyOf(Arrays.asList(filters)));
+    }
+
+    private static Object join(Object... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No values");
+        } else if (values.length == 1) {
+            return values[0];
+        }
+
+        ArrayList<String> strings = new ArrayList<>();
+        for (Object value : values) {
+            if (value instanceof Query.Param) {
+                throw new IllegalArgumentException("A parameter must be the only value");
+            }
+            strings.add(String.valueOf(value));
+        }
+
+        return String.join(",", strings);
+    }
+
+    private static Filter operator(String operator, String name, Object value) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException(operator + " needs a name");
+        }
+
+        return new Filter(operator, List.of("name", name, "value", value), null);
+    }
+}
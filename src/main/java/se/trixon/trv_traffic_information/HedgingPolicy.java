@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a duplicate of a request that is slower than usual, the first successful response wins.
+ * <p>
+ * The hedging delay is a percentile of the latencies of recent requests, until enough have been observed the initial delay is used. The
+ * losing request is cancelled if it has not been sent. Otherwise it runs to the end, since the HTTP client of Java 11 does not abort an
+ * exchange whose future is cancelled, and its body is closed when it arrives. The budget caps the hedged requests to a fraction of all
+ * requests.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class HedgingPolicy {
+
+    private static final int MIN_SAMPLES = 20;
+    private static final int SAMPLE_SIZE = 256;
+
+    private final double mBudget;
+    private final LongAdder mHedgeWins = new LongAdder();
+    private long mHedges;
+    private final Duration mInitialDelay;
+    private final double mPercentile;
+    private long mRequests;
+    private long mSampleCount;
+    private final long[] mSamples = new long[SAMPLE_SIZE];
+
+    /**
+     * Class constructor.
+     *
+     * @param percentile the percentile of the recent latencies used as delay, e.g. 0.95
+     * @param budget the maximum fraction of the requests being hedged, e.g. 0.05 for 5%
+     * @param initialDelay the delay used until enough latencies have been observed
+     */
+    public HedgingPolicy(double percentile, double budget, Duration initialDelay) {
+        if (percentile <= 0.0 || percentile >= 1.0 || budget < 0.0 || budget > 1.0 || initialDelay.isNegative()) {
+            throw new IllegalArgumentException(String.format("Invalid hedging policy: percentile=%s, budget=%s, initialDelay=%s", percentile, budget, initialDelay));
+        }
+        mPercentile = percentile;
+        mBudget = budget;
+        mInitialDelay = initialDelay;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getBudget() {
+        return mBudget;
+    }
+
+    /**
+     *
+     * @return the current hedging delay
+     */
+    public synchronized Duration getDelay() {
+        if (mSampleCount < MIN_SAMPLES) {
+            return mInitialDelay;
+        }
+
+        long[] samples = Arrays.copyOf(mSamples, (int) Math.min(mSampleCount, SAMPLE_SIZE));
+        Arrays.sort(samples);
+
+        return Duration.ofNanos(samples[(int) Math.ceil(mPercentile * samples.length) - 1]);
+    }
+
+    /**
+     *
+     * @return the number of requests won by their duplicate
+     */
+    public long getHedgeWins() {
+        return mHedgeWins.sum();
+    }
+
+    /**
+     *
+     * @return the number of duplicate requests sent
+     */
+    public synchronized long getHedges() {
+        return mHedges;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getInitialDelay() {
+        return mInitialDelay;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getPercentile() {
+        return mPercentile;
+    }
+
+    /**
+     *
+     * @return the number of requests
+     */
+    public synchronized long getRequests() {
+        return mRequests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d, hedges=%d, hedgeWins=%d, delay=%s", getRequests(), getHedges(), getHedgeWins(), getDelay());
+    }
+
+    /**
+     * Sends an attempt, and a duplicate if it is late.
+     *
+     * @param attempt sends the request, cancelling its future must close the body of a response arriving later
+     * @param executor running the duplicate
+     * @return the first successful response, or the last failure. Cancelling it cancels all attempts.
+     */
+    CompletableFuture<HttpResponse<InputStream>> execute(Supplier<CompletableFuture<HttpResponse<InputStream>>> attempt, Executor executor) {
+        Race race;
+        Duration delay;
+        synchronized (this) {
+            mRequests++;
+            race = new Race(attempt);
+            delay = getDelay();
+        }
+
+        race.start(false);
+        CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, executor).execute(() -> {
+            if (!race.mResult.isDone() && tryHedge()) {
+                race.start(true);
+            }
+        });
+
+        return race.mResult;
+    }
+
+    private synchronized void record(long nanos) {
+        mSamples[(int) (mSampleCount++ % SAMPLE_SIZE)] = nanos;
+    }
+
+    private synchronized boolean tryHedge() {
+        if (mHedges + 1 > mBudget * mRequests) {
+            return false;
+        }
+        mHedges++;
+
+        return true;
+    }
+
+    private static void discard(HttpResponse<InputStream> response) {
+        if (response != null) {
+            try {
+                response.body().close();
+            } catch (IOException ex) {
+                //nvm
+            }
+        }
+    }
+
+    private class Race {
+
+        private final Supplier<CompletableFuture<HttpResponse<InputStream>>> mAttempt;
+        private final List<CompletableFuture<HttpResponse<InputStream>>> mLegs = new ArrayList<>();
+        private int mPending;
+        private final CompletableFuture<HttpResponse<InputStream>> mResult = new CompletableFuture<>();
+
+        Race(Supplier<CompletableFuture<HttpResponse<InputStream>>> attempt) {
+            mAttempt = attempt;
+            mResult.whenComplete((response, ex) -> {
+                if (mResult.isCancelled()) {
+                    cancelLegs(null);
+                }
+            });
+        }
+
+        private void cancelLegs(CompletableFuture<HttpResponse<InputStream>> winner) {
+            List<CompletableFuture<HttpResponse<InputStream>>> legs;
+            synchronized (this) {
+                legs = new ArrayList<>(mLegs);
+            }
+
+            for (CompletableFuture<HttpResponse<InputStream>> leg : legs) {
+                if (leg != winner && !leg.cancel(true)) {
+                    leg.thenAccept(HedgingPolicy::discard);
+                }
+            }
+        }
+
+        private void complete(CompletableFuture<HttpResponse<InputStream>> leg, boolean hedge, long start, HttpResponse<InputStream> response, Throwable ex) {
+            boolean success = ex == null && !RetryPolicy.isRetryable(response.statusCode());
+            boolean last;
+            synchronized (this) {
+                last = --mPending == 0;
+            }
+
+            if (mResult.isDone() || !(success || last)) {
+                discard(response);
+                return;
+            }
+
+            boolean won = ex == null ? mResult.complete(response) : mResult.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            if (!won) {
+                discard(response);
+            } else if (success) {
+                record(System.nanoTime() - start);
+                if (hedge) {
+                    mHedgeWins.increment();
+                }
+                cancelLegs(leg);
+            }
+        }
+
+        private void start(boolean hedge) {
+            CompletableFuture<HttpResponse<InputStream>> leg;
+            long start = System.nanoTime();
+            synchronized (this) {
+                if (mResult.isDone()) {
+                    return;
+                }
+                mPending++;
+                try {
+                    leg = mAttempt.get();
+                } catch (RuntimeException ex) {
+                    leg = CompletableFuture.failedFuture(ex);
+                }
+                mLegs.add(leg);
+            }
+
+            CompletableFuture<HttpResponse<InputStream>> started = leg;
+            started.whenComplete((response, ex) -> complete(started, hedge, start, response, ex));
+        }
+    }
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a JSON response as the StAX events of the equivalent XML document, letting JAXB unmarshal it to the generated classes.
+ * <p>
+ * The JSON is tokenized as it arrives. Each member of an object is an element named by its key, each item of an array is an element named
+ * by the key of the array, strings, numbers and booleans are text and null members are left out. Members whose keys start with
+ * <code>@</code> are attributes of their element when they come before the other members.</p>
+ * <p>
+ * Names are interned, and reported so through the StAX2 properties, which spares JAXB from interning every name itself.</p>
+ *
+ * @author Patrik Karlström
+ */
+final class JsonStreamReader implements XMLStreamReader {
+
+    private static final String INTERN_NAMES = "org.codehaus.stax2.internNames";
+    private static final String INTERN_NS_URIS = "org.codehaus.stax2.internNsUris";
+    private static final NamespaceContext NAMESPACE_CONTEXT = new NamespaceContext() {
+        @Override
+        public String getNamespaceURI(String prefix) {
+            return XMLConstants.XML_NS_PREFIX.equals(prefix) ? XMLConstants.XML_NS_URI : XMLConstants.NULL_NS_URI;
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            return Collections.emptyIterator();
+        }
+    };
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
+    private String[] mAttributes = NO_ATTRIBUTES;
+    private final char[] mBuffer = new char[8192];
+    private int mBufferLimit;
+    private int mBufferPosition;
+    private int mEventType = START_DOCUMENT;
+    private final ArrayDeque<Frame> mFrames = new ArrayDeque<>();
+    private int mLine = 1;
+    private String mName;
+    private final HashMap<String, String> mNames = new HashMap<>();
+    private final ArrayDeque<Event> mPending = new ArrayDeque<>();
+    private Object mPeeked;
+    private final Reader mReader;
+    private boolean mStarted;
+    private final StringBuilder mString = new StringBuilder();
+    private String mText;
+    private char[] mTextCharacters;
+
+    JsonStreamReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Does not close the underlying reader, as specified by StAX.
+     */
+    @Override
+    public void close() throws XMLStreamException {
+        mPending.clear();
+        mFrames.clear();
+    }
+
+    @Override
+    public int getAttributeCount() {
+        requireStartElement();
+
+        return mAttributes.length / 2;
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        requireStartElement();
+
+        return mAttributes[index * 2];
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        return new QName(getAttributeLocalName(index));
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        return null;
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        return "CDATA";
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        requireStartElement();
+
+        return mAttributes[index * 2 + 1];
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        requireStartElement();
+        for (int i = 0; i < mAttributes.length; i += 2) {
+            if (mAttributes[i].equals(localName)) {
+                return mAttributes[i + 1];
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getCharacterEncodingScheme() {
+        return null;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (mEventType != START_ELEMENT) {
+            throw new XMLStreamException("Not at a start element", getLocation());
+        }
+
+        StringBuilder builder = new StringBuilder();
+        while (next() != END_ELEMENT) {
+            if (mEventType == CHARACTERS) {
+                builder.append(mText);
+            } else {
+                throw new XMLStreamException("Element text expected, got " + mName, getLocation());
+            }
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public String getEncoding() {
+        return null;
+    }
+
+    @Override
+    public int getEventType() {
+        return mEventType;
+    }
+
+    @Override
+    public String getLocalName() {
+        if (!hasName()) {
+            throw new IllegalStateException("No name at event " + mEventType);
+        }
+
+        return mName;
+    }
+
+    @Override
+    public Location getLocation() {
+        int line = mLine;
+
+        return new Location() {
+            @Override
+            public int getCharacterOffset() {
+                return -1;
+            }
+
+            @Override
+            public int getColumnNumber() {
+                return -1;
+            }
+
+            @Override
+            public int getLineNumber() {
+                return line;
+            }
+
+            @Override
+            public String getPublicId() {
+                return null;
+            }
+
+            @Override
+            public String getSystemId() {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public QName getName() {
+        return new QName(getLocalName());
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return NAMESPACE_CONTEXT;
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return NAMESPACE_CONTEXT.getNamespaceURI(prefix);
+    }
+
+    @Override
+    public String getPIData() {
+        return null;
+    }
+
+    @Override
+    public String getPITarget() {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return INTERN_NAMES.equals(name) || INTERN_NS_URIS.equals(name) ? Boolean.TRUE : null;
+    }
+
+    @Override
+    public String getText() {
+        if (mEventType != CHARACTERS) {
+            throw new IllegalStateException("No text at event " + mEventType);
+        }
+
+        return mText;
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        if (mTextCharacters == null) {
+            mTextCharacters = getText().toCharArray();
+        }
+
+        return mTextCharacters;
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) throws XMLStreamException {
+        int count = Math.min(length, getText().length() - sourceStart);
+        mText.getChars(sourceStart, sourceStart + count, target, targetStart);
+
+        return count;
+    }
+
+    @Override
+    public int getTextLength() {
+        return getText().length();
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public String getVersion() {
+        return null;
+    }
+
+    @Override
+    public boolean hasName() {
+        return mEventType == START_ELEMENT || mEventType == END_ELEMENT;
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        return mEventType != END_DOCUMENT;
+    }
+
+    @Override
+    public boolean hasText() {
+        return mEventType == CHARACTERS;
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        return true;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return mEventType == CHARACTERS;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return mEventType == END_ELEMENT;
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return false;
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return mEventType == START_ELEMENT;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return mEventType == CHARACTERS && mText.isBlank();
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (mEventType == END_DOCUMENT) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            while (mPending.isEmpty()) {
+                produce();
+            }
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+
+        Event event = mPending.poll();
+        mEventType = event.mType;
+        mName = event.mName;
+        mText = event.mText;
+        mTextCharacters = null;
+        mAttributes = event.mAttributes;
+
+        return mEventType;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        while (next() == CHARACTERS && isWhiteSpace()) {
+            //nvm
+        }
+        if (mEventType != START_ELEMENT && mEventType != END_ELEMENT) {
+            throw new XMLStreamException("Start or end element expected", getLocation());
+        }
+
+        return mEventType;
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (type != mEventType
+                || (namespaceURI != null && !namespaceURI.isEmpty())
+                || (localName != null && (!hasName() || !localName.equals(mName)))) {
+            throw new XMLStreamException(String.format("Expected event %d %s, got %d %s", type, localName, mEventType, mName), getLocation());
+        }
+    }
+
+    @Override
+    public boolean standaloneSet() {
+        return false;
+    }
+
+    private void emit(int type, String name, String text, String[] attributes) {
+        mPending.add(new Event(type, name, text, attributes));
+    }
+
+    private void expect(Token expected) throws IOException, XMLStreamException {
+        Object token = read();
+        if (token != expected) {
+            throw unexpected(token);
+        }
+    }
+
+    private Object peek() throws IOException, XMLStreamException {
+        if (mPeeked == null) {
+            mPeeked = read();
+        }
+
+        return mPeeked;
+    }
+
+    /**
+     * Reads the next token, or tokens, enqueuing the events they make.
+     */
+    private void produce() throws IOException, XMLStreamException {
+        Frame frame = mFrames.peek();
+        Object token = read();
+
+        if (frame == null) {
+            if (!mStarted) {
+                if (token != Token.BEGIN_OBJECT) {
+                    throw unexpected(token);
+                }
+                mStarted = true;
+                mFrames.push(new Frame(null, false));
+            } else if (token == Token.END) {
+                emit(END_DOCUMENT, null, null, NO_ATTRIBUTES);
+            } else {
+                throw unexpected(token);
+            }
+        } else if (token == Token.COMMA) {
+            //nvm
+        } else if (frame.mArray) {
+            if (token == Token.END_ARRAY) {
+                mFrames.pop();
+            } else {
+                value(frame.mName, token);
+            }
+        } else if (token == Token.END_OBJECT) {
+            mFrames.pop();
+            if (frame.mName != null) {
+                emit(END_ELEMENT, frame.mName, null, NO_ATTRIBUTES);
+            }
+        } else if (token instanceof String) {
+            expect(Token.COLON);
+            value(mNames.computeIfAbsent((String) token, String::intern), read());
+        } else {
+            throw unexpected(token);
+        }
+    }
+
+    private Object read() throws IOException, XMLStreamException {
+        if (mPeeked != null) {
+            Object token = mPeeked;
+            mPeeked = null;
+
+            return token;
+        }
+
+        int c;
+        do {
+            c = readChar();
+            if (c == '\n') {
+                mLine++;
+            }
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF');
+
+        switch (c) {
+            case -1:
+                return Token.END;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case ':':
+                return Token.COLON;
+            case ',':
+                return Token.COMMA;
+            case '"':
+                return readString();
+            default:
+                return readLiteral((char) c);
+        }
+    }
+
+    private int readChar() throws IOException {
+        if (mBufferPosition == mBufferLimit) {
+            int count = mReader.read(mBuffer, 0, mBuffer.length);
+            if (count <= 0) {
+                return -1;
+            }
+            mBufferPosition = 0;
+            mBufferLimit = count;
+        }
+
+        return mBuffer[mBufferPosition++];
+    }
+
+    /**
+     * Reads a number, true, false or null.
+     */
+    private Object readLiteral(char first) throws IOException, XMLStreamException {
+        mString.setLength(0);
+        mString.append(first);
+        while (true) {
+            int c = readChar();
+            if (c == -1) {
+                break;
+            } else if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                mBufferPosition--;
+                break;
+            }
+            mString.append((char) c);
+        }
+
+        String literal = mString.toString();
+        if (literal.equals("null")) {
+            return Token.NULL;
+        } else if (literal.equals("true") || literal.equals("false") || first == '-' || (first >= '0' && first <= '9')) {
+            return new Literal(literal);
+        }
+
+        throw new XMLStreamException("Invalid JSON value " + literal, getLocation());
+    }
+
+    private String readString() throws IOException, XMLStreamException {
+        mString.setLength(0);
+        while (true) {
+            int start = mBufferPosition;
+            while (mBufferPosition < mBufferLimit) {
+                char c = mBuffer[mBufferPosition];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                mBufferPosition++;
+            }
+            mString.append(mBuffer, start, mBufferPosition - start);
+
+            int c = readChar();
+            if (c == '"') {
+                return mString.toString();
+            } else if (c == '\\') {
+                int escaped = readChar();
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        mString.append((char) escaped);
+                        break;
+                    case 'b':
+                        mString.append('\b');
+                        break;
+                    case 'f':
+                        mString.append('\f');
+                        break;
+                    case 'n':
+                        mString.append('\n');
+                        break;
+                    case 'r':
+                        mString.append('\r');
+                        break;
+                    case 't':
+                        mString.append('\t');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(readChar(), 16);
+                            if (digit == -1) {
+                                throw new XMLStreamException("Invalid unicode escape", getLocation());
+                            }
+                            code = code * 16 + digit;
+                        }
+                        mString.append((char) code);
+                        break;
+                    default:
+                        throw new XMLStreamException("Invalid escape", getLocation());
+                }
+            } else if (c == -1) {
+                throw new XMLStreamException("Unterminated string", getLocation());
+            } else {
+                mString.append((char) c);
+            }
+        }
+    }
+
+    private void requireStartElement() {
+        if (mEventType != START_ELEMENT) {
+            throw new IllegalStateException("No attributes at event " + mEventType);
+        }
+    }
+
+    private XMLStreamException unexpected(Object token) {
+        return new XMLStreamException("Unexpected JSON " + (token instanceof String || token instanceof Literal ? "value " + token : token), getLocation());
+    }
+
+    /**
+     * Enqueues the events of a member or array item, the leading attributes of an object are read ahead.
+     */
+    private void value(String name, Object token) throws IOException, XMLStreamException {
+        if (token == Token.NULL) {
+            return;
+        } else if (token == Token.BEGIN_OBJECT) {
+            ArrayList<String> attributes = null;
+            while (peek() instanceof String && ((String) mPeeked).startsWith("@")) {
+                String key = (String) read();
+                expect(Token.COLON);
+                Object value = read();
+                if (value instanceof String || value instanceof Literal) {
+                    if (attributes == null) {
+                        attributes = new ArrayList<>();
+                    }
+                    attributes.add(mNames.computeIfAbsent(key.substring(1), String::intern));
+                    attributes.add(value.toString());
+                } else if (value != Token.NULL) {
+                    throw unexpected(value);
+                }
+                if (peek() == Token.COMMA) {
+                    read();
+                }
+            }
+            emit(START_ELEMENT, name, null, attributes == null ? NO_ATTRIBUTES : attributes.toArray(NO_ATTRIBUTES));
+            mFrames.push(new Frame(name, false));
+        } else if (token == Token.BEGIN_ARRAY) {
+            mFrames.push(new Frame(name, true));
+        } else if (token instanceof String || token instanceof Literal) {
+            emit(START_ELEMENT, name, null, NO_ATTRIBUTES);
+            emit(CHARACTERS, null, token.toString(), NO_ATTRIBUTES);
+            emit(END_ELEMENT, name, null, NO_ATTRIBUTES);
+        } else {
+            throw unexpected(token);
+        }
+    }
+
+    private enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, COLON, COMMA, NULL, END;
+    }
+
+    private static class Event {
+
+        private final String[] mAttributes;
+        private final String mName;
+        private final String mText;
+        private final int mType;
+
+        private Event(int type, String name, String text, String[] attributes) {
+            mType = type;
+            mName = name;
+            mText = text;
+            mAttributes = attributes;
+        }
+    }
+
+    private static class Frame {
+
+        private final boolean mArray;
+        private final String mName;
+
+        private Frame(String name, boolean array) {
+            mName = name;
+            mArray = array;
+        }
+    }
+
+    /**
+     * A number, true or false, kept apart from strings as it can not be a key.
+     */
+    private static class Literal {
+
+        private final String mText;
+
+        private Literal(String text) {
+            mText = text;
+        }
+
+        @Override
+        public String toString() {
+            return mText;
+        }
+    }
+}
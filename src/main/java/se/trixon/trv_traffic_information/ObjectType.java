@@ -0,0 +1,307 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The object types, and schema versions, supported by {@link TrafficInformation}.
+ *
+ * @param <R> the RESULT class of the object type
+ * @author Patrik Karlström
+ */
+public final class ObjectType<R> {
+
+    public static final ObjectType<se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESULT> RAIL_CROSSING = new ObjectType<>("RailCrossing", "1.4",
+            se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESPONSE.class,
+            se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESULT.class,
+            se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT> REASON_CODE = new ObjectType<>("ReasonCode", "1",
+            se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT.class,
+            se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT> TRAIN_ANNOUNCEMENT = new ObjectType<>("TrainAnnouncement", "1.6",
+            se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESPONSE.class,
+            se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT.class,
+            se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT> TRAIN_MESSAGE = new ObjectType<>("TrainMessage", "1.6",
+            se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESPONSE.class,
+            se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT.class,
+            se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT> TRAIN_STATION = new ObjectType<>("TrainStation", "1",
+            se.trixon.trv_traffic_information.railroad.trainstation.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT.class,
+            se.trixon.trv_traffic_information.railroad.trainstation.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.camera.v1.RESULT> CAMERA = new ObjectType<>("Camera", "1",
+            se.trixon.trv_traffic_information.road.camera.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.camera.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.camera.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESULT> FERRY_ANNOUNCEMENT = new ObjectType<>("FerryAnnouncement", "1.2",
+            se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESULT.class,
+            se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESULT> FERRY_ROUTE = new ObjectType<>("FerryRoute", "1.2",
+            se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESULT.class,
+            se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.icon.v1.RESULT> ICON = new ObjectType<>("Icon", "1",
+            se.trixon.trv_traffic_information.road.icon.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.icon.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.icon.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.parking.v1_4.RESULT> PARKING = new ObjectType<>("Parking", "1.4",
+            se.trixon.trv_traffic_information.road.parking.v1_4.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.parking.v1_4.RESULT.class,
+            se.trixon.trv_traffic_information.road.parking.v1_4.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESULT> ROAD_CONDITION_OVERVIEW = new ObjectType<>("RoadConditionOverview", "1",
+            se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESULT> ROAD_CONDITION = new ObjectType<>("RoadCondition", "1.2",
+            se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESULT.class,
+            se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.situation.v1_4.RESULT> SITUATION = new ObjectType<>("Situation", "1.4",
+            se.trixon.trv_traffic_information.road.situation.v1_4.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.situation.v1_4.RESULT.class,
+            se.trixon.trv_traffic_information.road.situation.v1_4.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESULT> TRAFFIC_FLOW = new ObjectType<>("TrafficFlow", "1.4",
+            se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESULT.class,
+            se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESULT> TRAFFIC_SAFETY_CAMERA = new ObjectType<>("TrafficSafetyCamera", "1",
+            se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESULT> TRAVEL_TIME_ROUTE = new ObjectType<>("TravelTimeRoute", "1.5",
+            se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESULT.class,
+            se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.weatherstation.v1.RESULT> WEATHER_STATION = new ObjectType<>("WeatherStation", "1",
+            se.trixon.trv_traffic_information.road.weatherstation.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.weatherstation.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.weatherstation.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESULT> MEASUREMENT_DATA_100 = new ObjectType<>("MeasurementData100", "1",
+            se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESULT> MEASUREMENT_DATA_20 = new ObjectType<>("MeasurementData20", "1",
+            se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESULT> PAVEMENT_DATA = new ObjectType<>("PavementData", "1",
+            se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESULT> ROAD_DATA = new ObjectType<>("RoadData", "1",
+            se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESPONSE::getRESULT);
+    public static final ObjectType<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESULT> ROAD_GEOMETRY = new ObjectType<>("RoadGeometry", "1",
+            se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESPONSE.class,
+            se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESULT.class,
+            se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESPONSE::getRESULT);
+
+    private static final List<ObjectType<?>> VALUES = List.of(
+            RAIL_CROSSING,
+            REASON_CODE,
+            TRAIN_ANNOUNCEMENT,
+            TRAIN_MESSAGE,
+            TRAIN_STATION,
+            CAMERA,
+            FERRY_ANNOUNCEMENT,
+            FERRY_ROUTE,
+            ICON,
+            PARKING,
+            ROAD_CONDITION_OVERVIEW,
+            ROAD_CONDITION,
+            SITUATION,
+            TRAFFIC_FLOW,
+            TRAFFIC_SAFETY_CAMERA,
+            TRAVEL_TIME_ROUTE,
+            WEATHER_STATION,
+            MEASUREMENT_DATA_100,
+            MEASUREMENT_DATA_20,
+            PAVEMENT_DATA,
+            ROAD_DATA,
+            ROAD_GEOMETRY
+    );
+
+    private final String mName;
+    private final Class<?> mResponseClass;
+    private final Class<R> mResultClass;
+    private final Function<Object, List<R>> mResultsFunction;
+    private final String mSchemaVersion;
+    private volatile Method[] mValueMethods;
+
+    /**
+     *
+     * @return all object types
+     */
+    public static List<ObjectType<?>> values() {
+        return VALUES;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> ObjectType(String name, String schemaVersion, Class<P> responseClass, Class<R> resultClass, Function<P, List<R>> resultsFunction) {
+        mName = name;
+        mSchemaVersion = schemaVersion;
+        mResponseClass = responseClass;
+        mResultClass = resultClass;
+        mResultsFunction = (Function<Object, List<R>>) resultsFunction;
+    }
+
+    /**
+     *
+     * @return the value of the objecttype attribute
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     *
+     * @param result
+     * @return the SOURCE and MESSAGE of the ERROR of the result, or <code>null</code> if it has no error
+     */
+    public String getError(R result) {
+        Object error = invoke(ValueMethod.ERROR, result);
+        if (error == null) {
+            return null;
+        }
+
+        return String.format("%s: %s", invoke(ValueMethod.ERROR_SOURCE, error), invoke(ValueMethod.ERROR_MESSAGE, error));
+    }
+
+    /**
+     *
+     * @param result
+     * @return the LASTCHANGEID of the INFO of the result, or <code>null</code>
+     */
+    public String getLastChangeId(R result) {
+        return (String) invoke(ValueMethod.INFO_LASTCHANGEID, invoke(ValueMethod.INFO, result));
+    }
+
+    /**
+     *
+     * @return the class of the objects of a RESULT, e.g. TrainAnnouncement
+     */
+    public Class<?> getObjectClass() {
+        return (Class<?>) ((ParameterizedType) getValueMethods()[ValueMethod.OBJECTS.ordinal()].getGenericReturnType()).getActualTypeArguments()[0];
+    }
+
+    /**
+     *
+     * @param result
+     * @return the objects of the result, e.g. the TrainAnnouncement list of a TrainAnnouncement RESULT
+     */
+    public List<?> getObjects(R result) {
+        return (List<?>) invoke(ValueMethod.OBJECTS, result);
+    }
+
+    /**
+     *
+     * @return the class of the RESPONSE element
+     */
+    public Class<?> getResponseClass() {
+        return mResponseClass;
+    }
+
+    /**
+     *
+     * @return the class of the RESULT element
+     */
+    public Class<R> getResultClass() {
+        return mResultClass;
+    }
+
+    /**
+     *
+     * @param response an unmarshalled RESPONSE of this object type
+     * @return the RESULT list of the response
+     */
+    public List<R> getResults(Object response) {
+        return mResultsFunction.apply(response);
+    }
+
+    /**
+     *
+     * @return the value of the schemaversion attribute
+     */
+    public String getSchemaVersion() {
+        return mSchemaVersion;
+    }
+
+    /**
+     *
+     * @param result
+     * @return the SSEURL of the INFO of the result, or <code>null</code>
+     */
+    public String getSseUrl(R result) {
+        return (String) invoke(ValueMethod.INFO_SSEURL, invoke(ValueMethod.INFO, result));
+    }
+
+    @Override
+    public String toString() {
+        return mName + " " + mSchemaVersion;
+    }
+
+    /**
+     * Calls a getter of the RESULT, INFO or ERROR classes, they share method names but no common type.
+     */
+    private Object invoke(ValueMethod valueMethod, Object object) {
+        if (object == null) {
+            return null;
+        }
+
+        try {
+            return getValueMethods()[valueMethod.ordinal()].invoke(object);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private Method[] getValueMethods() {
+        Method[] methods = mValueMethods;
+        if (methods == null) {
+            try {
+                Class<?> infoClass = mResultClass.getMethod("getINFO").getReturnType();
+                Class<?> errorClass = mResultClass.getMethod("getERROR").getReturnType();
+                methods = new Method[]{
+                    mResultClass.getMethod("getINFO"),
+                    infoClass.getMethod("getLASTCHANGEID"),
+                    infoClass.getMethod("getSSEURL"),
+                    mResultClass.getMethod("getERROR"),
+                    errorClass.getMethod("getSOURCE"),
+                    errorClass.getMethod("getMESSAGE"),
+                    mResultClass.getMethod("get" + mName)
+                };
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException(ex);
+            }
+            mValueMethods = methods;
+        }
+
+        return methods;
+    }
+
+    private enum ValueMethod {
+        INFO, INFO_LASTCHANGEID, INFO_SSEURL, ERROR, ERROR_SOURCE, ERROR_MESSAGE, OBJECTS;
+    }
+}
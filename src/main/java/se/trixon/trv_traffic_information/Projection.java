@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlTransient;
+import java.io.Serializable;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Derives the INCLUDE field names of a query from the getters a consumer reads.
+ * <p>
+ * The server leaves out every field not included, so the fields never reach the unmarshaller and the unread properties of the
+ * objects stay <code>null</code>.</p>
+ * <pre>
+ * Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+ *         .include(TrainAnnouncement.class, TrainAnnouncement::getActivityId, TrainAnnouncement::getAdvertisedTimeAtLocation)
+ *         .include("FromLocation.LocationName")
+ * </pre>
+ *
+ * @author Patrik Karlström
+ */
+public final class Projection {
+
+    private static final Map<Class<?>, Map<String, Field>> ELEMENTS = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the field names of getters.
+     *
+     * @param <T> the object class
+     * @param objectClass e.g. TrainAnnouncement.class
+     * @param getters method references to getters of the object class
+     * @return the field names, in the order of the getters
+     */
+    @SafeVarargs
+    public static <T> Set<String> of(Class<T> objectClass, Getter<T>... getters) {
+        Set<String> fieldNames = new LinkedHashSet<>();
+        for (Getter<T> getter : getters) {
+            fieldNames.add(getFieldName(objectClass, getter));
+        }
+
+        return fieldNames;
+    }
+
+    /**
+     * Checks field names, optionally dotted into child elements like <code>FromLocation.LocationName</code>, against an object class.
+     *
+     * @param objectClass
+     * @param fieldNames
+     * @throws IllegalArgumentException if a field does not exist
+     */
+    public static void validate(Class<?> objectClass, Collection<String> fieldNames) {
+        for (String fieldName : fieldNames) {
+            Class<?> c = objectClass;
+            for (String name : fieldName.split("\\.")) {
+                Field field = c == null ? null : getElements(c).get(name);
+                if (field == null) {
+                    throw new IllegalArgumentException(String.format("%s has no field %s", objectClass.getSimpleName(), fieldName));
+                }
+                c = getElementClass(field);
+            }
+        }
+    }
+
+    private Projection() {
+    }
+
+    static <T> String getFieldName(Class<T> objectClass, Getter<T> getter) {
+        String methodName;
+        try {
+            Method writeReplace = getter.getClass().getDeclaredMethod("writeReplace");
+            writeReplace.setAccessible(true);
+            methodName = ((SerializedLambda) writeReplace.invoke(getter)).getImplMethodName();
+        } catch (ReflectiveOperationException | ClassCastException | SecurityException ex) {
+            throw new IllegalArgumentException("Not a method reference to a getter", ex);
+        }
+
+        String property = methodName.startsWith("get") ? methodName.substring(3) : methodName.startsWith("is") ? methodName.substring(2) : methodName;
+        for (Map.Entry<String, Field> entry : getElements(objectClass).entrySet()) {
+            if (entry.getValue().getName().equalsIgnoreCase(property)) {
+                return entry.getKey();
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("%s.%s is not the getter of a field", objectClass.getSimpleName(), methodName));
+    }
+
+    /**
+     * Maps element names to fields, xjc generates field access for all classes.
+     */
+    static Map<String, Field> getElements(Class<?> c) {
+        return ELEMENTS.computeIfAbsent(c, k -> {
+            Map<String, Field> elements = new LinkedHashMap<>();
+            for (Class<?> t = k; t != null && t != Object.class; t = t.getSuperclass()) {
+                for (Field field : t.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(XmlAttribute.class) || field.isAnnotationPresent(XmlTransient.class)) {
+                        continue;
+                    }
+
+                    XmlElement element = field.getAnnotation(XmlElement.class);
+                    String name = element == null || "##default".equals(element.name()) ? field.getName() : element.name();
+                    elements.putIfAbsent(name, field);
+                }
+            }
+
+            return Collections.unmodifiableMap(elements);
+        });
+    }
+
+    private static Class<?> getElementClass(Field field) {
+        Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            type = ((ParameterizedType) type).getActualTypeArguments()[0];
+        }
+        if (!(type instanceof Class) || ((Class<?>) type).getName().startsWith("java")) {
+            return null;
+        }
+
+        return (Class<?>) type;
+    }
+
+    /**
+     * A method reference to a getter of an object class.
+     *
+     * @param <T> the object class
+     */
+    @FunctionalInterface
+    public interface Getter<T> extends Function<T, Object>, Serializable {
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A QUERY built from typed parts and serialized once.
+ * <p>
+ * The XML of the query is written when it is built, only the values of its {@link Param parameters} are substituted, and escaped, on each
+ * call. A query without parameters is a constant string. Queries are immutable and may be shared between threads.</p>
+ *
+ * <pre>
+ * Query&lt;...trainannouncement.v1_6.RESULT&gt; departures = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+ *         .filter(Filter.and(
+ *                 Filter.eq("ActivityType", "Avgang"),
+ *                 Filter.eq("LocationSignature", Query.param("station"))))
+ *         .include("AdvertisedTimeAtLocation", "ToLocation")
+ *         .orderBy("AdvertisedTimeAtLocation")
+ *         .limit(20)
+ *         .build();
+ * trafficInformation.getResults(departures, Map.of("station", "Cst"), null);
+ * </pre>
+ *
+ * @param <R> the RESULT class of the object type
+ * @author Patrik Karlström
+ */
+public final class Query<R> {
+
+    private final String mConstant;
+    private final ObjectType<R> mObjectType;
+    private final Set<String> mParameterNames;
+    private final Object[] mParts;
+
+    private Query(ObjectType<R> objectType, List<Object> parts) {
+        mObjectType = objectType;
+        mParts = parts.toArray();
+        LinkedHashSet<String> parameterNames = new LinkedHashSet<>();
+        for (Object part : mParts) {
+            if (part instanceof Param) {
+                parameterNames.add(((Param) part).getName());
+            }
+        }
+        mParameterNames = Collections.unmodifiableSet(parameterNames);
+        mConstant = parameterNames.isEmpty() ? (String) mParts[0] : null;
+    }
+
+    /**
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @return a builder of a query of the object type
+     */
+    public static <R> Builder<R> builder(ObjectType<R> objectType) {
+        return new Builder<>(objectType);
+    }
+
+    /**
+     *
+     * @param name
+     * @return a value given on each call
+     */
+    public static Param param(String name) {
+        return new Param(name);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ObjectType<R> getObjectType() {
+        return mObjectType;
+    }
+
+    /**
+     *
+     * @return the names of the parameters in order of appearance
+     */
+    public Set<String> getParameterNames() {
+        return mParameterNames;
+    }
+
+    @Override
+    public String toString() {
+        return toXml(null, true);
+    }
+
+    /**
+     *
+     * @param parameters the values of the parameters. <code>null</code> is valid for a query without parameters.
+     * @return the QUERY element
+     */
+    public String toXml(Map<String, ?> parameters) {
+        return toXml(parameters, false);
+    }
+
+    /**
+     * Escapes a value for an attribute or element content.
+     */
+    static String escape(String value) {
+        StringBuilder builder = null;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&apos;";
+                    break;
+                // Attribute values would otherwise have their line breaks and tabs normalized to spaces by the parser
+                case '\t':
+                    replacement = "&#9;";
+                    break;
+                case '\n':
+                    replacement = "&#10;";
+                    break;
+                case '\r':
+                    replacement = "&#13;";
+                    break;
+                default:
+                    replacement = null;
+                    break;
+            }
+
+            if (replacement != null && builder == null) {
+                builder = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (replacement != null) {
+                builder.append(replacement);
+            } else if (builder != null) {
+                builder.append(value.charAt(i));
+            }
+        }
+
+        return builder == null ? value : builder.toString();
+    }
+
+    private String toXml(Map<String, ?> parameters, boolean placeholders) {
+        if (mConstant != null) {
+            return mConstant;
+        }
+
+        StringBuilder builder = new StringBuilder(256);
+        for (Object part : mParts) {
+            if (part instanceof Param) {
+                String name = ((Param) part).getName();
+                if (placeholders) {
+                    builder.append("${").append(name).append("}");
+                } else {
+                    Object value = parameters == null ? null : parameters.get(name);
+                    if (value == null) {
+                        throw new IllegalArgumentException("Missing value of parameter " + name);
+                    }
+                    builder.append(escape(String.valueOf(value)));
+                }
+            } else {
+                builder.append((String) part);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Collects the parts of a query, attribute values are escaped and parameters kept apart.
+     */
+    static class Template {
+
+        private final ArrayList<Object> mParts = new ArrayList<>();
+        private final StringBuilder mText = new StringBuilder();
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Object part : getParts()) {
+                builder.append(part instanceof Param ? "${" + ((Param) part).getName() + "}" : part);
+            }
+
+            return builder.toString();
+        }
+
+        Template append(String text) {
+            mText.append(text);
+
+            return this;
+        }
+
+        Template appendValue(Object value) {
+            if (value instanceof Param) {
+                flush();
+                mParts.add(value);
+            } else {
+                mText.append(escape(String.valueOf(value)));
+            }
+
+            return this;
+        }
+
+        List<Object> getParts() {
+            flush();
+            if (mParts.isEmpty()) {
+                mParts.add("");
+            }
+
+            return mParts;
+        }
+
+        private void flush() {
+            if (mText.length() > 0) {
+                mParts.add(mText.toString());
+                mText.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * A builder of a {@link Query}.
+     *
+     * @param <R> the RESULT class of the object type
+     */
+    public static final class Builder<R> {
+
+        private final TreeMap<String, Object> mAttributes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final ArrayList<String> mExcludes = new ArrayList<>();
+        private Filter mFilter;
+        private final ArrayList<String> mIncludes = new ArrayList<>();
+        private final ObjectType<R> mObjectType;
+
+        private Builder(ObjectType<R> objectType) {
+            mObjectType = objectType;
+            mAttributes.put("objecttype", objectType.getName());
+            mAttributes.put("schemaversion", objectType.getSchemaVersion());
+        }
+
+        /**
+         * Sets any attribute of the QUERY.
+         *
+         * @param name
+         * @param value a literal or a {@link Param}
+         * @return
+         */
+        public Builder<R> attribute(String name, Object value) {
+            if (value == null) {
+                mAttributes.remove(name);
+            } else {
+                mAttributes.put(name, value);
+            }
+
+            return this;
+        }
+
+        /**
+         *
+         * @return the query
+         */
+        public Query<R> build() {
+            if (!mIncludes.isEmpty() && !mExcludes.isEmpty()) {
+                throw new IllegalStateException("A query can not have both INCLUDE and EXCLUDE");
+            }
+            Projection.validate(mObjectType.getObjectClass(), mIncludes);
+            Projection.validate(mObjectType.getObjectClass(), mExcludes);
+
+            Template template = new Template();
+            template.append("  <QUERY");
+            for (Map.Entry<String, Object> entry : mAttributes.entrySet()) {
+                template.append(" ").append(entry.getKey()).append("=\"").appendValue(entry.getValue()).append("\"");
+            }
+            template.append(">\n    ");
+
+            if (mFilter != null) {
+                template.append("<FILTER>");
+                mFilter.write(template);
+                template.append("</FILTER>");
+            }
+            for (String include : mIncludes) {
+                template.append("<INCLUDE>").appendValue(include).append("</INCLUDE>");
+            }
+            for (String exclude : mExcludes) {
+                template.append("<EXCLUDE>").appendValue(exclude).append("</EXCLUDE>");
+            }
+            template.append("\n  </QUERY>\n");
+
+            return new Query<>(mObjectType, template.getParts());
+        }
+
+        /**
+         * Sets the change id, returning only objects changed since.
+         *
+         * @param changeId a literal or a {@link Param}
+         * @return
+         */
+        public Builder<R> changeId(Object changeId) {
+            return attribute("changeid", changeId);
+        }
+
+        /**
+         * Leaves out fields from the objects.
+         *
+         * @param fieldNames optionally dotted into child elements, e.g. <code>FromLocation.LocationName</code>
+         * @return
+         */
+        public Builder<R> exclude(String... fieldNames) {
+            mExcludes.addAll(Arrays.asList(fieldNames));
+
+            return this;
+        }
+
+        /**
+         * Sets the FILTER, several conditions are combined with {@link Filter#and(se.trixon.trv_traffic_information.Filter...)}.
+         *
+         * @param filter
+         * @return
+         */
+        public Builder<R> filter(Filter filter) {
+            mFilter = filter;
+
+            return this;
+        }
+
+        /**
+         * Limits the objects to the given fields.
+         *
+         * @param fieldNames optionally dotted into child elements, e.g. <code>FromLocation.LocationName</code>
+         * @return
+         */
+        public Builder<R> include(String... fieldNames) {
+            mIncludes.addAll(Arrays.asList(fieldNames));
+
+            return this;
+        }
+
+        /**
+         * Limits the objects to the fields of the given getters.
+         *
+         * @param <T> the object class
+         * @param objectClass the class of the objects of the object type, e.g. TrainAnnouncement.class
+         * @param getters method references like <code>TrainAnnouncement::getActivityId</code>
+         * @return
+         */
+        @SafeVarargs
+        public final <T> Builder<R> include(Class<T> objectClass, Projection.Getter<T>... getters) {
+            if (objectClass != mObjectType.getObjectClass()) {
+                throw new IllegalArgumentException(String.format("%s is not the object class of %s", objectClass.getName(), mObjectType));
+            }
+            for (Projection.Getter<T> getter : getters) {
+                mIncludes.add(Projection.getFieldName(objectClass, getter));
+            }
+
+            return this;
+        }
+
+        /**
+         *
+         * @param limit a number or a {@link Param}
+         * @return
+         */
+        public Builder<R> limit(Object limit) {
+            return attribute("limit", limit);
+        }
+
+        /**
+         *
+         * @param orderBy e.g. <code>AdvertisedTimeAtLocation desc</code>
+         * @return
+         */
+        public Builder<R> orderBy(String orderBy) {
+            return attribute("orderby", orderBy);
+        }
+
+        /**
+         *
+         * @param skip a number or a {@link Param}
+         * @return
+         */
+        public Builder<R> skip(Object skip) {
+            return attribute("skip", skip);
+        }
+    }
+
+    /**
+     * A named value given on each call.
+     */
+    public static final class Param {
+
+        private final String mName;
+
+        private Param(String name) {
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("A parameter needs a name");
+            }
+            mName = name;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public String toString() {
+            return "${" + mName + "}";
+        }
+    }
+}
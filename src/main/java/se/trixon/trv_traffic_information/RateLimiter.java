@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the request rate, with a token bucket, and the number of requests in flight.
+ * <p>
+ * In {@link Mode#QUEUE} callers wait for their turn in arrival order. In {@link Mode#FAIL_FAST} a request that would have to wait is
+ * rejected with a {@link RejectedException}.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class RateLimiter {
+
+    private final LongAdder mAcquired = new LongAdder();
+    private final long mBurstNanos;
+    private final Semaphore mInFlight;
+    private final long mIntervalNanos;
+    private final int mMaxInFlight;
+    private final Mode mMode;
+    private final AtomicLong mNextFreeNanos = new AtomicLong(System.nanoTime());
+    private final double mPermitsPerSecond;
+    private final LongAdder mQueueNanos = new LongAdder();
+    private final LongAdder mRejected = new LongAdder();
+
+    /**
+     * Class constructor allowing a burst of one second worth of requests.
+     *
+     * @param permitsPerSecond
+     * @param maxInFlight
+     * @param mode
+     */
+    public RateLimiter(double permitsPerSecond, int maxInFlight, Mode mode) {
+        this(permitsPerSecond, Math.max(1, (int) permitsPerSecond), maxInFlight, mode);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param permitsPerSecond the sustained request rate
+     * @param burst the number of requests that may be sent at once after an idle period
+     * @param maxInFlight the maximum number of requests sent but not yet fully read
+     * @param mode
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxInFlight, Mode mode) {
+        if (permitsPerSecond <= 0 || burst < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("Invalid limits: permitsPerSecond=%s, burst=%d, maxInFlight=%d", permitsPerSecond, burst, maxInFlight));
+        }
+        mPermitsPerSecond = permitsPerSecond;
+        mIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        mBurstNanos = mIntervalNanos * burst;
+        mMaxInFlight = maxInFlight;
+        mInFlight = new Semaphore(maxInFlight, true);
+        mMode = mode;
+    }
+
+    /**
+     *
+     * @return the number of granted requests
+     */
+    public long getAcquired() {
+        return mAcquired.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests currently in flight
+     */
+    public int getInFlight() {
+        return mMaxInFlight - mInFlight.availablePermits();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getMaxInFlight() {
+        return mMaxInFlight;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getPermitsPerSecond() {
+        return mPermitsPerSecond;
+    }
+
+    /**
+     *
+     * @return the total time granted requests have waited
+     */
+    public Duration getQueueTime() {
+        return Duration.ofNanos(mQueueNanos.sum());
+    }
+
+    /**
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+        return mRejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("acquired=%d, rejected=%d, inFlight=%d, queueTime=%s", getAcquired(), getRejected(), getInFlight(), getQueueTime());
+    }
+
+    /**
+     * Waits for, or in fail-fast mode demands, an in-flight slot and a rate token. The slot must be given back with {@link #release()}.
+     * <p>
+     * The slot is taken first, so a request rejected or interrupted while waiting for a slot does not spend a token. A token reserved by a
+     * request that is then rejected or interrupted is given back.</p>
+     */
+    void acquire() throws InterruptedException, RejectedException {
+        long start = System.nanoTime();
+        if (mMode == Mode.FAIL_FAST) {
+            if (!mInFlight.tryAcquire()) {
+                mRejected.increment();
+                throw new RejectedException(String.format("%d requests already in flight", mMaxInFlight));
+            }
+        } else {
+            mInFlight.acquire();
+        }
+
+        try {
+            long wait = reserve(System.nanoTime());
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException ex) {
+                    unreserve();
+                    throw ex;
+                }
+            }
+        } catch (InterruptedException | RejectedException ex) {
+            mInFlight.release();
+            throw ex;
+        }
+
+        mQueueNanos.add(System.nanoTime() - start);
+        mAcquired.increment();
+    }
+
+    /**
+     * Gives back the in-flight slot and the rate token of an acquired request that is not sent.
+     */
+    void cancel() {
+        unreserve();
+        mInFlight.release();
+    }
+
+    void release() {
+        mInFlight.release();
+    }
+
+    /**
+     * Reserves the next rate token, tokens are handed out in call order. Nothing is reserved when a fail-fast request is rejected.
+     *
+     * @return the nanoseconds to wait for the token
+     */
+    private long reserve(long now) throws RejectedException {
+        while (true) {
+            long next = mNextFreeNanos.get();
+            long theoretical = Math.max(next, now);
+            long wait = theoretical - (mBurstNanos - mIntervalNanos) - now;
+
+            if (wait > 0 && mMode == Mode.FAIL_FAST) {
+                mRejected.increment();
+                throw new RejectedException(String.format("Rate of %s requests per second exceeded", mPermitsPerSecond));
+            }
+
+            if (mNextFreeNanos.compareAndSet(next, theoretical + mIntervalNanos)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    private void unreserve() {
+        mNextFreeNanos.addAndGet(-mIntervalNanos);
+    }
+
+    public enum Mode {
+        QUEUE, FAIL_FAST;
+    }
+
+    /**
+     * Thrown in fail-fast mode when a request exceeds the limits.
+     */
+    public static class RejectedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBException;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets identical concurrent requests share one upstream call and its parsed result.
+ * <p>
+ * Requests are identified by their normalized query, without the API key. A request arriving while an identical one is in flight waits
+ * for it instead of sending its own. Coalesced callers get the same result objects, which must therefore be treated as read-only.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class RequestCoalescer {
+
+    private final LongAdder mCoalesced = new LongAdder();
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> mInFlight = new ConcurrentHashMap<>();
+    private final LongAdder mRequests = new LongAdder();
+
+    RequestCoalescer() {
+    }
+
+    /**
+     *
+     * @return the coalesced requests divided by all requests, 0.0 if there are none
+     */
+    public double getCoalesceRatio() {
+        long requests = getRequests();
+
+        return requests == 0 ? 0.0 : (double) getCoalesced() / requests;
+    }
+
+    /**
+     *
+     * @return the number of requests served by the call of an identical request
+     */
+    public long getCoalesced() {
+        return mCoalesced.sum();
+    }
+
+    /**
+     *
+     * @return the number of distinct requests currently in flight
+     */
+    public int getInFlight() {
+        return mInFlight.size();
+    }
+
+    /**
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return mRequests.sum();
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void reset() {
+        mCoalesced.reset();
+        mRequests.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d, coalesced=%d, inFlight=%d", getRequests(), getCoalesced(), getInFlight());
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, Call<T> call) throws IOException, InterruptedException, JAXBException {
+        mRequests.increment();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = mInFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            mCoalesced.increment();
+
+            // Calls sharing a key share the result type
+            return (T) TrafficInformation.join(existing);
+        }
+
+        try {
+            T result = call.call();
+            future.complete(result);
+
+            return result;
+        } catch (IOException | InterruptedException | JAXBException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            mInFlight.remove(key, future);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> supplier) {
+        mRequests.increment();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = mInFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            mCoalesced.increment();
+        } else {
+            existing = future;
+            try {
+                supplier.get().whenComplete((result, ex) -> {
+                    mInFlight.remove(key, future);
+                    if (ex != null) {
+                        future.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                mInFlight.remove(key, future);
+                future.completeExceptionally(ex);
+            }
+        }
+
+        // A dependent future, so that a caller cancelling it leaves the shared call alone
+        return existing.thenApply(result -> (T) result);
+    }
+
+    interface Call<T> {
+
+        T call() throws IOException, InterruptedException, JAXBException;
+    }
+}
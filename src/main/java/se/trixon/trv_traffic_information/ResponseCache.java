@@ -0,0 +1,374 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the results of queries for object types given a time to live.
+ * <p>
+ * Entries are keyed by the normalized QUERY, which holds the object type, schema version, attributes and details. Each entry weighs the
+ * number of decoded XML bytes of its response, the least recently used entries are evicted when the total weight exceeds the maximum.</p>
+ * <p>
+ * An expired entry within the stale-while-revalidate window is still returned while a single reload runs in the background. Concurrent
+ * misses of the same query share one load. Cached results are shared by all callers and must not be modified. Results carrying an ERROR are
+ * returned to the callers of their load but never cached.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class ResponseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder mEvictions = new LongAdder();
+    private final LongAdder mHits = new LongAdder();
+    private final long mMaxWeight;
+    private final LongAdder mMisses = new LongAdder();
+    private final LongSupplier mNanoTime;
+    private final LongAdder mStaleHits = new LongAdder();
+    private volatile Duration mStaleWhileRevalidate = Duration.ZERO;
+    private final ConcurrentHashMap<ObjectType<?>, Duration> mTtls = new ConcurrentHashMap<>();
+    private long mWeight;
+
+    /**
+     * Class constructor.
+     *
+     * @param maxWeight the maximum total weight, in decoded response bytes
+     */
+    public ResponseCache(long maxWeight) {
+        this(maxWeight, System::nanoTime);
+    }
+
+    ResponseCache(long maxWeight, LongSupplier nanoTime) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Invalid max weight: " + maxWeight);
+        }
+        mMaxWeight = maxWeight;
+        mNanoTime = nanoTime;
+    }
+
+    /**
+     *
+     * @return the number of entries evicted to respect the maximum weight
+     */
+    public long getEvictions() {
+        return mEvictions.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests served by a fresh or loading entry
+     */
+    public long getHits() {
+        return mHits.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public long getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    /**
+     *
+     * @return the number of requests that had to be sent
+     */
+    public long getMisses() {
+        return mMisses.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests served by an expired entry while it was reloaded
+     */
+    public long getStaleHits() {
+        return mStaleHits.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getStaleWhileRevalidate() {
+        return mStaleWhileRevalidate;
+    }
+
+    /**
+     *
+     * @param objectType
+     * @return the time to live of the object type, or <code>null</code> if not cached
+     */
+    public Duration getTtl(ObjectType<?> objectType) {
+        return mTtls.get(objectType);
+    }
+
+    /**
+     *
+     * @return the total weight of the entries
+     */
+    public synchronized long getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void invalidateAll() {
+        mEntries.clear();
+        mWeight = 0;
+    }
+
+    /**
+     * Removes the entries of an object type.
+     *
+     * @param objectType
+     */
+    public synchronized void invalidate(ObjectType<?> objectType) {
+        for (Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext();) {
+            Entry entry = iterator.next();
+            if (entry.mObjectType == objectType) {
+                if (entry.mLoaded) {
+                    mWeight -= entry.mWeight;
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param objectType
+     * @return true if the results of the object type are cached
+     */
+    public boolean isCached(ObjectType<?> objectType) {
+        return mTtls.containsKey(objectType);
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void resetStatistics() {
+        mEvictions.reset();
+        mHits.reset();
+        mMisses.reset();
+        mStaleHits.reset();
+    }
+
+    /**
+     * Sets for how long an expired entry is still returned while it is reloaded, the default is zero.
+     *
+     * @param staleWhileRevalidate
+     */
+    public void setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+        mStaleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Sets the time to live of the results of an object type, <code>null</code> stops caching it.
+     *
+     * @param objectType
+     * @param ttl
+     */
+    public void setTtl(ObjectType<?> objectType, Duration ttl) {
+        if (ttl == null) {
+            mTtls.remove(objectType);
+            invalidate(objectType);
+        } else {
+            mTtls.put(objectType, ttl);
+        }
+    }
+
+    /**
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, staleHits=%d, misses=%d, evictions=%d, size=%d, weight=%d", getHits(), getStaleHits(), getMisses(), getEvictions(), size(), getWeight());
+    }
+
+    /**
+     * Gets the cached results of a query, loading them if missing or expired. Every call with a key expects the same results type.
+     *
+     * @param key the normalized QUERY
+     * @param loader sends the query and unmarshals its results
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> get(ObjectType<?> objectType, String key, Supplier<CompletableFuture<Value>> loader) {
+        Duration ttl = mTtls.get(objectType);
+        if (ttl == null) {
+            return loader.get().thenApply(value -> (T) value.mResults);
+        }
+
+        long now = mNanoTime.getAsLong();
+        Entry entry;
+        boolean load = false;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = mEntries.get(key);
+            if (entry != null && entry.mLoaded && now - entry.mExpires >= 0) {
+                if (now - entry.mStaleUntil < 0) {
+                    mStaleHits.increment();
+                    refresh = !entry.mRefreshing;
+                    entry.mRefreshing = true;
+                } else {
+                    remove(key, entry);
+                    entry = null;
+                }
+            } else if (entry != null) {
+                mHits.increment();
+            }
+
+            if (entry == null) {
+                mMisses.increment();
+                entry = new Entry(objectType);
+                mEntries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (load) {
+            load(key, entry, null, ttl, loader);
+        } else if (refresh) {
+            Entry refreshed = new Entry(objectType);
+            refreshed.mFuture.whenComplete((results, ex) -> {
+                if (ex != null) {
+                    LOGGER.log(Level.FINE, "Revalidation of " + objectType.getName() + " failed, keeping the stale entry", ex);
+                }
+            });
+            load(key, refreshed, entry, ttl, loader);
+        }
+
+        // A dependent future, so that a caller cancelling it leaves the entry alone
+        return entry.mFuture.thenApply(results -> (T) results);
+    }
+
+    private void evict() {
+        for (Iterator<Entry> iterator = mEntries.values().iterator(); mWeight > mMaxWeight && iterator.hasNext();) {
+            Entry entry = iterator.next();
+            if (entry.mLoaded) {
+                mWeight -= entry.mWeight;
+                iterator.remove();
+                mEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Loads an entry, replacing the stale entry if it is a revalidation. The result is only cached if it is cacheable and the entry it is
+     * meant for is still in place, a revalidation that is not cacheable keeps the stale entry.
+     */
+    private void load(String key, Entry entry, Entry stale, Duration ttl, Supplier<CompletableFuture<Value>> loader) {
+        CompletableFuture<Value> future;
+        try {
+            future = loader.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+
+        future.whenComplete((value, ex) -> {
+            synchronized (this) {
+                Entry current = mEntries.get(key);
+                if (ex != null || !value.mCacheable) {
+                    if (stale == null && current == entry) {
+                        mEntries.remove(key);
+                    } else if (stale != null) {
+                        stale.mRefreshing = false;
+                    }
+                } else if (current == (stale == null ? entry : stale)) {
+                    long now = mNanoTime.getAsLong();
+                    entry.mWeight = value.mWeight;
+                    entry.mExpires = now + ttl.toNanos();
+                    entry.mStaleUntil = entry.mExpires + mStaleWhileRevalidate.toNanos();
+                    entry.mLoaded = true;
+                    if (stale != null) {
+                        remove(key, stale);
+                        mEntries.put(key, entry);
+                    }
+                    mWeight += entry.mWeight;
+                    evict();
+                }
+            }
+
+            if (ex != null) {
+                entry.mFuture.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            } else {
+                entry.mFuture.complete(value.mResults);
+            }
+        });
+    }
+
+    private void remove(String key, Entry entry) {
+        if (mEntries.remove(key, entry) && entry.mLoaded) {
+            mWeight -= entry.mWeight;
+        }
+    }
+
+    /**
+     * The results of a response and their weight.
+     */
+    static class Value {
+
+        private final boolean mCacheable;
+        private final Object mResults;
+        private final long mWeight;
+
+        /**
+         *
+         * @param cacheable false if the results must only be returned to the callers of this load, like results carrying an ERROR
+         */
+        Value(Object results, long weight, boolean cacheable) {
+            mResults = results;
+            mWeight = weight;
+            mCacheable = cacheable;
+        }
+    }
+
+    /**
+     * Guarded by the cache, except for the future.
+     */
+    private static class Entry {
+
+        private long mExpires;
+        private final CompletableFuture<Object> mFuture = new CompletableFuture<>();
+        private boolean mLoaded;
+        private final ObjectType<?> mObjectType;
+        private boolean mRefreshing;
+        private long mStaleUntil;
+        private long mWeight;
+
+        Entry(ObjectType<?> objectType) {
+            mObjectType = objectType;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides if and when a failed request is sent again.
+ * <p>
+ * Connection failures, timeouts and responses with HTTP 429 or 5xx are retried until the maximum number of attempts. The delay grows
+ * exponentially from the initial delay up to the maximum delay, and is shortened by a random part of itself, the jitter, so that clients
+ * failing together do not retry together. A <code>Retry-After</code> header is honored, unless it asks for more than the maximum delay, which
+ * ends the retries.</p>
+ *
+ * @author Patrik Karlström
+ */
+public class RetryPolicy {
+
+    private final LongAdder mAttempts = new LongAdder();
+    private final Clock mClock;
+    private final LongAdder mExhausted = new LongAdder();
+    private final LongAdder mFailures = new LongAdder();
+    private final Duration mInitialDelay;
+    private final double mJitter;
+    private final int mMaxAttempts;
+    private final Duration mMaxDelay;
+    private final double mMultiplier;
+    private final LongAdder mRetries = new LongAdder();
+    private final LongAdder mRetryNanos = new LongAdder();
+
+    /**
+     * Class constructor doubling the delay for each attempt, with a jitter of 0.5.
+     *
+     * @param maxAttempts
+     * @param initialDelay
+     * @param maxDelay
+     */
+    public RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay) {
+        this(maxAttempts, initialDelay, maxDelay, 2.0, 0.5);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param initialDelay the delay before the first retry
+     * @param maxDelay the maximum delay before a retry
+     * @param multiplier the growth of the delay for each retry
+     * @param jitter the maximum part of the delay, from 0.0 to 1.0, randomly taken away
+     */
+    public RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, double multiplier, double jitter) {
+        this(maxAttempts, initialDelay, maxDelay, multiplier, jitter, Clock.systemUTC());
+    }
+
+    RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, double multiplier, double jitter, Clock clock) {
+        if (maxAttempts < 1 || initialDelay.isNegative() || maxDelay.compareTo(initialDelay) < 0 || multiplier < 1.0 || jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException(String.format("Invalid retry policy: maxAttempts=%d, initialDelay=%s, maxDelay=%s, multiplier=%s, jitter=%s",
+                    maxAttempts, initialDelay, maxDelay, multiplier, jitter));
+        }
+        mMaxAttempts = maxAttempts;
+        mInitialDelay = initialDelay;
+        mMaxDelay = maxDelay;
+        mMultiplier = multiplier;
+        mJitter = jitter;
+        mClock = clock;
+    }
+
+    /**
+     *
+     * @return the number of attempts, first ones included
+     */
+    public long getAttempts() {
+        return mAttempts.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests that failed on their last allowed attempt
+     */
+    public long getExhausted() {
+        return mExhausted.sum();
+    }
+
+    /**
+     *
+     * @return the number of failed attempts
+     */
+    public long getFailures() {
+        return mFailures.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getInitialDelay() {
+        return mInitialDelay;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getJitter() {
+        return mJitter;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Duration getMaxDelay() {
+        return mMaxDelay;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getMultiplier() {
+        return mMultiplier;
+    }
+
+    /**
+     *
+     * @return the number of retries
+     */
+    public long getRetries() {
+        return mRetries.sum();
+    }
+
+    /**
+     *
+     * @return the total delay spent waiting to retry
+     */
+    public Duration getRetryTime() {
+        return Duration.ofNanos(mRetryNanos.sum());
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void reset() {
+        mAttempts.reset();
+        mExhausted.reset();
+        mFailures.reset();
+        mRetries.reset();
+        mRetryNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("attempts=%d, failures=%d, retries=%d, exhausted=%d, retryTime=%s", getAttempts(), getFailures(), getRetries(), getExhausted(), getRetryTime());
+    }
+
+    /**
+     * Records an attempt and decides on the next one.
+     *
+     * @param attempt the number of the attempt, starting at 1
+     * @param failed true if the attempt failed in a way worth retrying
+     * @param response the response of the attempt, or <code>null</code> if it threw
+     * @return the delay before the next attempt, or <code>null</code> if there will be none
+     */
+    Duration evaluate(int attempt, boolean failed, HttpResponse<?> response) {
+        mAttempts.increment();
+        if (!failed) {
+            return null;
+        }
+
+        mFailures.increment();
+        Duration retryAfter = response == null ? null : getRetryAfter(response);
+        if (attempt >= mMaxAttempts || (retryAfter != null && retryAfter.compareTo(mMaxDelay) > 0)) {
+            mExhausted.increment();
+
+            return null;
+        }
+
+        double backoff = Math.min(mInitialDelay.toNanos() * Math.pow(mMultiplier, attempt - 1), mMaxDelay.toNanos());
+        long nanos = (long) (backoff * (1.0 - mJitter * ThreadLocalRandom.current().nextDouble()));
+        if (retryAfter != null) {
+            nanos = Math.max(nanos, retryAfter.toNanos());
+        }
+
+        mRetries.increment();
+        mRetryNanos.add(nanos);
+
+        return Duration.ofNanos(nanos);
+    }
+
+    /**
+     *
+     * @return true if an attempt answered with the status should be retried
+     */
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Parses the <code>Retry-After</code> header, given either as seconds or as a HTTP date.
+     */
+    private Duration getRetryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return null;
+        }
+
+        value = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            //nvm
+        }
+
+        try {
+            long millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - mClock.millis();
+
+            return Duration.ofMillis(Math.max(0, millis));
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the results pushed by the Server-Sent Events stream of a query.
+ * <p>
+ * A query sent with the attribute <code>sseurl="true"</code> gets the url of the stream in the SSEURL of its INFO. Each event carries a
+ * RESPONSE that is unmarshalled and its RESULT elements published in order. Subscribers request results as usual with
+ * {@link Flow.Subscription#request(long)}, when their buffers are full the stream is no longer read.</p>
+ * <p>
+ * A broken connection is reopened after the retry delay, with the id of the last received event, until the subscription is closed. A
+ * client error response (4xx) ends the subscription exceptionally.</p>
+ * <p>
+ * Nothing is read until the first {@link #subscribe(java.util.concurrent.Flow.Subscriber)}, so no result is published before anyone
+ * listens.</p>
+ *
+ * @param <R> the RESULT class of the object type
+ * @author Patrik Karlström
+ */
+public class SseSubscription<R> implements Flow.Publisher<R>, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SseSubscription.class.getName());
+
+    private volatile boolean mClosed;
+    private volatile InputStream mInputStream;
+    private volatile String mLastEventId;
+    private final ObjectType<R> mObjectType;
+    private final SubmissionPublisher<R> mPublisher;
+    private long mRetry = 1000;
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+    private final Thread mThread;
+    private final TrafficInformation mTrafficInformation;
+    private final String mUrl;
+
+    SseSubscription(TrafficInformation trafficInformation, ObjectType<R> objectType, String url) {
+        mTrafficInformation = trafficInformation;
+        mObjectType = objectType;
+        mUrl = url;
+        mPublisher = new SubmissionPublisher<>(trafficInformation.getExecutor(), Flow.defaultBufferSize());
+        mThread = new Thread(this::run, "SseSubscription " + objectType.getName());
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Stops reading the stream and completes the subscribers.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        mThread.interrupt();
+        closeInputStream();
+        mPublisher.close();
+    }
+
+    /**
+     *
+     * @return the id of the last received event, or <code>null</code>
+     */
+    public String getLastEventId() {
+        return mLastEventId;
+    }
+
+    /**
+     *
+     * @return the url of the stream
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     *
+     * @return true until closed
+     */
+    public boolean isOpen() {
+        return !mClosed;
+    }
+
+    /**
+     * Adds a subscriber. The first subscriber opens the stream, later subscribers get the results published after they subscribed.
+     *
+     * @param subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        mPublisher.subscribe(subscriber);
+        if (!mClosed && mStarted.compareAndSet(false, true)) {
+            mThread.start();
+        }
+    }
+
+    private void closeInputStream() {
+        InputStream inputStream = mInputStream;
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException ex) {
+                //nvm
+            }
+        }
+    }
+
+    private HttpRequest createHttpRequest() {
+        String url = mUrl;
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .GET()
+                .header("Accept", "text/event-stream")
+                .header("Cache-Control", "no-cache");
+
+        String lastEventId = mLastEventId;
+        if (lastEventId != null) {
+            builder.header("Last-Event-ID", lastEventId);
+            url += (url.contains("?") ? "&" : "?") + "lasteventid=" + URLEncoder.encode(lastEventId, StandardCharsets.UTF_8);
+        }
+
+        return builder.uri(URI.create(url)).build();
+    }
+
+    private void dispatch(String data) {
+        try {
+            Object response = mTrafficInformation.unmarshal(mObjectType.getResponseClass(), new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+            for (R result : mObjectType.getResults(response)) {
+                mPublisher.submit(result);
+            }
+        } catch (Exception ex) {
+            if (!mClosed) {
+                LOGGER.log(Level.WARNING, "Skipping unparsable event " + mLastEventId, ex);
+            }
+        }
+    }
+
+    private void read(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        StringBuilder data = new StringBuilder();
+        String eventId = null;
+        String line;
+        while (!mClosed && (line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (eventId != null) {
+                    mLastEventId = eventId;
+                }
+                if (data.length() > 0) {
+                    dispatch(data.toString());
+                }
+                data.setLength(0);
+                eventId = null;
+                continue;
+            } else if (line.startsWith(":")) {
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            String field = colon == -1 ? line : line.substring(0, colon);
+            String value = colon == -1 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            switch (field) {
+                case "data":
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    data.append(value);
+                    break;
+
+                case "id":
+                    eventId = value;
+                    break;
+
+                case "retry":
+                    try {
+                        mRetry = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        //nvm
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void run() {
+        while (!mClosed) {
+            try {
+                HttpResponse<InputStream> response = mTrafficInformation.send(createHttpRequest(), HttpResponse.BodyHandlers.ofInputStream());
+                int status = response.statusCode();
+                if (status >= 400 && status < 500) {
+                    response.body().close();
+                    mClosed = true;
+                    mPublisher.closeExceptionally(new IOException("SSE connection refused with HTTP " + status));
+                    return;
+                }
+
+                mInputStream = response.body();
+                try (InputStream inputStream = mInputStream) {
+                    if (status == 200) {
+                        read(inputStream);
+                    }
+                }
+            } catch (IOException ex) {
+                if (!mClosed) {
+                    LOGGER.log(Level.FINE, "SSE connection lost, reconnecting", ex);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                Thread.sleep(mRetry);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        mPublisher.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.Unmarshaller;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Reads StAX events straight into the generated classes, without JAXB.
+ * <p>
+ * The readers are generated from the bundled schemas by <code>StaxReaderGenerator</code> when the project is built, into
+ * <code>StaxReaders</code>, and set the fields through the setters and list getters of the xjc classes. Unknown elements are skipped, as
+ * JAXB does, and the lax any-content of EVALRESULT becomes DOM elements. The helpers below are shared by the generated readers.</p>
+ *
+ * @author Patrik Karlström
+ */
+final class StaxUnmarshaller {
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    /**
+     *
+     * @return true if a reader is generated for the class
+     */
+    static boolean canUnmarshal(Class<?> clazz) {
+        return StaxReaders.get(clazz) != null;
+    }
+
+    /**
+     * Reads the element the reader is at, or the first one after it, and its content. Like an unmarshaller, the reader is left on the
+     * event following the element.
+     *
+     * @param listener notified before and after each object, like by an unmarshaller, or <code>null</code>
+     */
+    static <T> T unmarshal(Class<T> clazz, XMLStreamReader reader, Unmarshaller.Listener listener) throws XMLStreamException {
+        Reader<?> staxReader = StaxReaders.get(clazz);
+        if (staxReader == null) {
+            throw new IllegalArgumentException("No reader is generated for " + clazz.getName());
+        }
+
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            if (!reader.hasNext()) {
+                throw new XMLStreamException("No root element");
+            }
+            reader.next();
+        }
+
+        T object = clazz.cast(staxReader.read(reader, null, listener));
+        if (reader.hasNext()) {
+            reader.next();
+        }
+
+        return object;
+    }
+
+    /**
+     * Moves to the next child element.
+     *
+     * @return false at the end of the current element
+     */
+    static boolean nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+                default:
+                    break;
+            }
+        }
+    }
+
+    static boolean parseBoolean(XMLStreamReader reader, String text) throws XMLStreamException {
+        switch (text.trim()) {
+            case "true":
+            case "1":
+                return true;
+            case "false":
+            case "0":
+                return false;
+            default:
+                throw new XMLStreamException("Invalid boolean " + text, reader.getLocation());
+        }
+    }
+
+    static XMLGregorianCalendar parseDateTime(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Timestamps.parse(text.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    static double parseDouble(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    static float parseFloat(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Float.parseFloat(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    static int parseInt(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    static long parseLong(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    static short parseShort(XMLStreamReader reader, String text) throws XMLStreamException {
+        try {
+            return Short.parseShort(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException(ex.getMessage(), reader.getLocation(), ex);
+        }
+    }
+
+    /**
+     * Reads the element the reader is at into a DOM element of a new document.
+     */
+    static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+        DocumentBuilder documentBuilder;
+        try {
+            // The factory is not thread safe, the builders it makes are used by one thread only
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                documentBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException ex) {
+            throw new XMLStreamException(ex);
+        }
+
+        return readElement(documentBuilder.newDocument(), reader);
+    }
+
+    static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static Element readElement(Document document, XMLStreamReader reader) throws XMLStreamException {
+        Element element = document.createElementNS(reader.getNamespaceURI(), reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                element.appendChild(readElement(document, reader));
+            } else if (reader.hasText()) {
+                element.appendChild(document.createTextNode(reader.getText()));
+            }
+        }
+
+        return element;
+    }
+
+    private StaxUnmarshaller() {
+    }
+
+    /**
+     * Reads an element, the reader is at its start and left at its end.
+     *
+     * @param <T> the generated class
+     */
+    interface Reader<T> {
+
+        T read(XMLStreamReader reader, Object parent, Unmarshaller.Listener listener) throws XMLStreamException;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.Unmarshaller;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonicalizes the values of configured String fields while unmarshalling, so that each distinct value is held once.
+ * <p>
+ * Large results repeat a few values, like the LocationSignature, ActivityType and InformationOwner of a TrainAnnouncement, in every object.
+ * The pool is bounded, once full new values are kept as they are. Install it with
+ * {@link UnmarshallerPool#setListener(jakarta.xml.bind.Unmarshaller.Listener)}.</p>
+ * <pre>
+ * StringPool stringPool = new StringPool(10_000)
+ *         .add(TrainAnnouncement.class, "LocationSignature", "ActivityType", "InformationOwner", "Operator")
+ *         .add(TypeOfTraffic.class, "Code", "Description");
+ * trafficInformation.getUnmarshallerPool().setListener(stringPool);
+ * </pre>
+ *
+ * @author Patrik Karlström
+ */
+public class StringPool extends Unmarshaller.Listener {
+
+    private final ConcurrentHashMap<Class<?>, List<Accessor>> mClassToAccessors = new ConcurrentHashMap<>();
+    private final LongAdder mHits = new LongAdder();
+    private final int mMaxSize;
+    private final LongAdder mMisses = new LongAdder();
+    private final ConcurrentHashMap<String, String> mStrings = new ConcurrentHashMap<>();
+
+    /**
+     * Class constructor.
+     *
+     * @param maxSize the maximum number of distinct values kept
+     */
+    public StringPool(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Adds fields whose values are canonicalized.
+     *
+     * @param clazz a generated class, e.g. TrainAnnouncement.class
+     * @param elementNames the element names of String or String list fields
+     * @return this pool
+     * @throws IllegalArgumentException if a field does not exist or is of another type
+     */
+    public StringPool add(Class<?> clazz, String... elementNames) {
+        Map<String, Field> elements = Projection.getElements(clazz);
+        List<Accessor> accessors = new ArrayList<>();
+        for (String elementName : elementNames) {
+            Field field = elements.get(elementName);
+            if (field == null) {
+                throw new IllegalArgumentException(String.format("%s has no field %s", clazz.getSimpleName(), elementName));
+            }
+            accessors.add(new Accessor(field));
+        }
+        mClassToAccessors.merge(clazz, accessors, (a, b) -> {
+            List<Accessor> merged = new ArrayList<>(a);
+            merged.addAll(b);
+            return merged;
+        });
+
+        return this;
+    }
+
+    @Override
+    public void afterUnmarshal(Object target, Object parent) {
+        List<Accessor> accessors = mClassToAccessors.get(target.getClass());
+        if (accessors != null) {
+            for (Accessor accessor : accessors) {
+                accessor.canonicalize(target);
+            }
+        }
+    }
+
+    /**
+     * Empties the pool and resets the counters, the configured fields are kept.
+     */
+    public void clear() {
+        mStrings.clear();
+        mHits.reset();
+        mMisses.reset();
+    }
+
+    /**
+     *
+     * @return the number of values replaced by a pooled instance
+     */
+    public long getHits() {
+        return mHits.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     *
+     * @return the number of values not found in the pool
+     */
+    public long getMisses() {
+        return mMisses.sum();
+    }
+
+    /**
+     *
+     * @param value
+     * @return the pooled instance equal to the value, the value itself if new, or <code>null</code>
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String pooled = mStrings.get(value);
+        if (pooled != null) {
+            mHits.increment();
+            return pooled;
+        }
+
+        mMisses.increment();
+        if (mStrings.size() >= mMaxSize) {
+            return value;
+        }
+        pooled = mStrings.putIfAbsent(value, value);
+
+        return pooled == null ? value : pooled;
+    }
+
+    /**
+     *
+     * @return the number of distinct values kept
+     */
+    public int size() {
+        return mStrings.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d, hits=%d, misses=%d", size(), getHits(), getMisses());
+    }
+
+    private class Accessor {
+
+        private final MethodHandle mGetter;
+        private final boolean mList;
+        private final MethodHandle mSetter;
+
+        private Accessor(Field field) {
+            mList = List.class.isAssignableFrom(field.getType());
+            Class<?> type = mList ? (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0] : field.getType();
+            if (type != String.class) {
+                throw new IllegalArgumentException(String.format("%s is not a String field", field));
+            }
+
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+                mGetter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                mSetter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void canonicalize(Object target) {
+            try {
+                Object value = (Object) mGetter.invokeExact(target);
+                if (value == null) {
+                    return;
+                }
+
+                if (mList) {
+                    ((List<String>) value).replaceAll(StringPool.this::intern);
+                } else {
+                    mSetter.invokeExact(target, (Object) intern((String) value));
+                }
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
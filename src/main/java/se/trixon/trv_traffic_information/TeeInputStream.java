@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies the bytes read from a stream to an output stream as they arrive.
+ * <p>
+ * Closing the stream drains the unread bytes to the output stream, so the copy is complete even if the reader stops early.</p>
+ *
+ * @author Patrik Karlström
+ */
+class TeeInputStream extends FilterInputStream {
+
+    private boolean mClosed;
+    private final OutputStream mOutputStream;
+
+    TeeInputStream(InputStream inputStream, OutputStream outputStream) {
+        super(inputStream);
+        mOutputStream = outputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+        try (mOutputStream) {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mOutputStream.write(b);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            mOutputStream.write(b, off, n);
+        }
+
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (r == -1) {
+                break;
+            }
+            skipped += r;
+        }
+
+        return skipped;
+    }
+}
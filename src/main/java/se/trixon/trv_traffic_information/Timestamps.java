@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Comparator;
+import java.util.function.Function;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Fast conversions of the <code>xs:dateTime</code> timestamps of the model, like <code>AdvertisedTimeAtLocation</code> of a
+ * TrainAnnouncement.
+ * <p>
+ * The common form <code>2020-06-29T14:40:55.000+02:00</code> is parsed by position, without the lexical parser of {@link DatatypeFactory},
+ * and calendars are converted from their fields instead of through a <code>GregorianCalendar</code>. Timestamps without an offset are in
+ * the given zone, or the default zone like {@link XMLGregorianCalendar#toGregorianCalendar()}.</p>
+ *
+ * @author Patrik Karlström
+ */
+public final class Timestamps {
+
+    private static final DatatypeFactory DATATYPE_FACTORY;
+    private static final int DAY = 2;
+    private static final int FRACTION_DIGITS = 7;
+    private static final int HOUR = 3;
+    private static final int MINUTE = 4;
+    private static final int MONTH = 1;
+    private static final int NANO = 6;
+    private static final int OFFSET = 8;
+    private static final int SECOND = 5;
+    private static final int YEAR = 0;
+
+    static {
+        try {
+            DATATYPE_FACTORY = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Compares objects by a timestamp, those without one last.
+     *
+     * @param <T>
+     * @param timestamp e.g. <code>TrainAnnouncement::getAdvertisedTimeAtLocation</code>
+     * @return
+     */
+    public static <T> Comparator<T> comparing(Function<? super T, XMLGregorianCalendar> timestamp) {
+        return Comparator.comparing(timestamp, Comparator.nullsLast(Timestamps::compare));
+    }
+
+    /**
+     * Compares two timestamps by their instants, without the partial order of {@link XMLGregorianCalendar#compare(XMLGregorianCalendar)}.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static int compare(XMLGregorianCalendar a, XMLGregorianCalendar b) {
+        int result = Long.compare(toEpochMillis(a), toEpochMillis(b));
+        if (result == 0) {
+            result = Integer.compare(getNanos(a) % 1_000_000, getNanos(b) % 1_000_000);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a timestamp into a calendar, equal to one from {@link DatatypeFactory#newXMLGregorianCalendar(java.lang.String)}.
+     *
+     * @param text
+     * @return
+     * @throws IllegalArgumentException if the text is not a valid <code>xs:dateTime</code>
+     */
+    public static XMLGregorianCalendar parse(CharSequence text) {
+        int[] fields = new int[9];
+        if (!parse(text, fields)) {
+            return DATATYPE_FACTORY.newXMLGregorianCalendar(text.toString().trim());
+        }
+
+        int digits = fields[FRACTION_DIGITS];
+        if (digits == 0) {
+            return DATATYPE_FACTORY.newXMLGregorianCalendar(fields[YEAR], fields[MONTH], fields[DAY], fields[HOUR], fields[MINUTE], fields[SECOND], DatatypeConstants.FIELD_UNDEFINED, fields[OFFSET]);
+        } else if (digits == 3) {
+            return DATATYPE_FACTORY.newXMLGregorianCalendar(fields[YEAR], fields[MONTH], fields[DAY], fields[HOUR], fields[MINUTE], fields[SECOND], fields[NANO] / 1_000_000, fields[OFFSET]);
+        }
+
+        XMLGregorianCalendar calendar = DATATYPE_FACTORY.newXMLGregorianCalendar(fields[YEAR], fields[MONTH], fields[DAY], fields[HOUR], fields[MINUTE], fields[SECOND], DatatypeConstants.FIELD_UNDEFINED, fields[OFFSET]);
+        calendar.setFractionalSecond(new BigDecimal("0" + text.subSequence(19, 20 + digits)));
+
+        return calendar;
+    }
+
+    /**
+     *
+     * @param text
+     * @return the milliseconds since the epoch of a timestamp, in the default zone if it has no offset
+     * @throws IllegalArgumentException if the text is not a valid <code>xs:dateTime</code>
+     */
+    public static long parseEpochMillis(CharSequence text) {
+        return parseEpochMillis(text, ZoneId.systemDefault());
+    }
+
+    /**
+     *
+     * @param text
+     * @param zone the zone of a timestamp without offset
+     * @return the milliseconds since the epoch of a timestamp
+     * @throws IllegalArgumentException if the text is not a valid <code>xs:dateTime</code>
+     */
+    public static long parseEpochMillis(CharSequence text, ZoneId zone) {
+        int[] fields = new int[9];
+        if (!parse(text, fields)) {
+            return toEpochMillis(DATATYPE_FACTORY.newXMLGregorianCalendar(text.toString().trim()), zone);
+        }
+
+        return toEpochMillis(fields, zone);
+    }
+
+    /**
+     *
+     * @param text
+     * @return the instant of a timestamp, in the default zone if it has no offset
+     * @throws IllegalArgumentException if the text is not a valid <code>xs:dateTime</code>
+     */
+    public static Instant parseInstant(CharSequence text) {
+        return toInstant(parse(text));
+    }
+
+    /**
+     *
+     * @param calendar
+     * @return the milliseconds since the epoch, in the default zone if the calendar has no timezone
+     */
+    public static long toEpochMillis(XMLGregorianCalendar calendar) {
+        return toEpochMillis(calendar, ZoneId.systemDefault());
+    }
+
+    /**
+     *
+     * @param calendar
+     * @param zone the zone of a calendar without timezone
+     * @return the milliseconds since the epoch
+     */
+    public static long toEpochMillis(XMLGregorianCalendar calendar, ZoneId zone) {
+        int[] fields = new int[9];
+        fields[YEAR] = calendar.getYear();
+        fields[MONTH] = calendar.getMonth();
+        fields[DAY] = calendar.getDay();
+        fields[HOUR] = undefinedAsZero(calendar.getHour());
+        fields[MINUTE] = undefinedAsZero(calendar.getMinute());
+        fields[SECOND] = undefinedAsZero(calendar.getSecond());
+        fields[NANO] = getNanos(calendar);
+        fields[OFFSET] = calendar.getTimezone();
+
+        return toEpochMillis(fields, zone);
+    }
+
+    /**
+     *
+     * @param calendar
+     * @return the instant of the calendar, in the default zone if it has no timezone, or <code>null</code>
+     */
+    public static Instant toInstant(XMLGregorianCalendar calendar) {
+        if (calendar == null) {
+            return null;
+        }
+
+        return Instant.ofEpochMilli(toEpochMillis(calendar)).plusNanos(getNanos(calendar) % 1_000_000);
+    }
+
+    /**
+     *
+     * @param calendar
+     * @return the date and time of the calendar with its offset, the offset of the default zone if it has no timezone, or
+     * <code>null</code>
+     */
+    public static OffsetDateTime toOffsetDateTime(XMLGregorianCalendar calendar) {
+        if (calendar == null) {
+            return null;
+        }
+
+        Instant instant = toInstant(calendar);
+        int timezone = calendar.getTimezone();
+        ZoneOffset offset = timezone == DatatypeConstants.FIELD_UNDEFINED
+                ? ZoneId.systemDefault().getRules().getOffset(instant)
+                : ZoneOffset.ofTotalSeconds(timezone * 60);
+
+        return OffsetDateTime.ofInstant(instant, offset);
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date, after Howard Hinnant's days_from_civil.
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yearOfEra = (int) (y - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int getNanos(XMLGregorianCalendar calendar) {
+        BigDecimal fraction = calendar.getFractionalSecond();
+
+        return fraction == null ? 0 : fraction.movePointRight(9).intValue();
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Parses <code>yyyy-MM-ddTHH:mm:ss[.S+][Z|(+|-)hh:mm]</code> by position.
+     *
+     * @return false if the text has another form, left to the DatatypeFactory
+     */
+    private static boolean parse(CharSequence text, int[] fields) {
+        int length = text.length();
+        if (length < 19 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return false;
+        }
+
+        fields[YEAR] = digits(text, 0, 4);
+        fields[MONTH] = digits(text, 5, 2);
+        fields[DAY] = digits(text, 8, 2);
+        fields[HOUR] = digits(text, 11, 2);
+        fields[MINUTE] = digits(text, 14, 2);
+        fields[SECOND] = digits(text, 17, 2);
+        if (fields[YEAR] < 0 || fields[MONTH] < 1 || fields[MONTH] > 12 || fields[DAY] < 1 || fields[DAY] > lengthOfMonth(fields[YEAR], fields[MONTH])
+                || fields[HOUR] < 0 || fields[HOUR] > 23 || fields[MINUTE] < 0 || fields[MINUTE] > 59 || fields[SECOND] < 0 || fields[SECOND] > 59) {
+            return false;
+        }
+
+        int i = 19;
+        int nano = 0;
+        int digits = 0;
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                if (digits < 9) {
+                    nano = nano * 10 + text.charAt(i) - '0';
+                }
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 9) {
+                return false;
+            }
+            for (int d = digits; d < 9; d++) {
+                nano *= 10;
+            }
+        }
+        fields[NANO] = nano;
+        fields[FRACTION_DIGITS] = digits;
+
+        if (i == length) {
+            fields[OFFSET] = DatatypeConstants.FIELD_UNDEFINED;
+        } else if (text.charAt(i) == 'Z' && i + 1 == length) {
+            fields[OFFSET] = 0;
+        } else if ((text.charAt(i) == '+' || text.charAt(i) == '-') && i + 6 == length && text.charAt(i + 3) == ':') {
+            int hours = digits(text, i + 1, 2);
+            int minutes = digits(text, i + 4, 2);
+            if (hours < 0 || hours > 14 || minutes < 0 || minutes > 59) {
+                return false;
+            }
+            fields[OFFSET] = (text.charAt(i) == '-' ? -1 : 1) * (hours * 60 + minutes);
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    private static long toEpochMillis(int[] fields, ZoneId zone) {
+        long seconds = epochDay(fields[YEAR], fields[MONTH], fields[DAY]) * 86400 + fields[HOUR] * 3600 + fields[MINUTE] * 60 + fields[SECOND];
+        if (fields[OFFSET] == DatatypeConstants.FIELD_UNDEFINED) {
+            try {
+                LocalDateTime localDateTime = LocalDateTime.of(fields[YEAR], fields[MONTH], fields[DAY], fields[HOUR], fields[MINUTE], fields[SECOND]);
+                // An ambiguous local time gets the later offset, as from GregorianCalendar
+                ZoneOffsetTransition transition = zone.getRules().getTransition(localDateTime);
+                ZoneOffset offset = transition != null && transition.isOverlap() ? transition.getOffsetAfter() : zone.getRules().getOffset(localDateTime);
+                seconds -= offset.getTotalSeconds();
+            } catch (DateTimeException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        } else {
+            seconds -= fields[OFFSET] * 60;
+        }
+
+        return seconds * 1000 + fields[NANO] / 1_000_000;
+    }
+
+    private static int undefinedAsZero(int value) {
+        return value == DatatypeConstants.FIELD_UNDEFINED ? 0 : value;
+    }
+
+    private Timestamps() {
+    }
+}
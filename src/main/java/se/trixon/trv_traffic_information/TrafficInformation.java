@@ -15,26 +15,54 @@
  */
 package se.trixon.trv_traffic_information;
 
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.UnmarshalException;
 import jakarta.xml.bind.Unmarshaller;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProxySelector;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * The only class needed to get Traffic Information from the Swedish Transport Administration.
@@ -59,169 +87,1446 @@ import java.util.logging.Logger;
  */
 public class TrafficInformation {
 
-    private final ConcurrentHashMap<Class, Unmarshaller> mClassToUnmarshallerLocal = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Class, Unmarshaller> mClassToUnmarshallerRemote = new ConcurrentHashMap<>();
-    private final HttpClient mHttpClient = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_2)
-            .build();
+    private static final int BUFFER_SIZE = 8192;
+    private static final ScheduledExecutorService KEEP_ALIVE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TrafficInformation keep-alive");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Logger LOGGER = Logger.getLogger(TrafficInformation.class.getName());
+    private static final String PING_QUERY = Query.builder(ObjectType.REASON_CODE).limit(1).build().toXml(null);
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    private static final int ZLIB_DEFLATE = 0x78;
+
+    private volatile CircuitBreaker mCircuitBreaker;
+    private volatile boolean mCoalescing = false;
+    private boolean mCompression = true;
+    private boolean mDirectUnmarshalling = false;
+    private Executor mExecutor = ForkJoinPool.commonPool();
+    private final ConcurrentHashMap<ObjectType<?>, HedgingPolicy> mHedgingPolicies = new ConcurrentHashMap<>();
+    private final HttpClient mHttpClient;
+    private Duration mKeepAlive;
+    private ScheduledFuture<?> mKeepAliveFuture;
     private String mKey = "";
+    private volatile long mLastRequestNanos = System.nanoTime();
+    private volatile RateLimiter mRateLimiter;
+    private final ConcurrentHashMap<ObjectType<?>, RateLimiter> mRateLimiters = new ConcurrentHashMap<>();
+    private volatile CompletableFuture<Duration> mReadiness;
+    private final RequestCoalescer mRequestCoalescer = new RequestCoalescer();
+    private volatile ResponseCache mResponseCache;
+    private volatile RetryPolicy mRetryPolicy;
     private final Railroad mRailroad = new Railroad();
     private final Road mRoad = new Road();
+    private boolean mSaveCompressed = false;
     private int mTimeout = 30000;
+    private final ConcurrentHashMap<ObjectType<?>, Integer> mTimeouts = new ConcurrentHashMap<>();
+    private final TransferStatistics mTransferStatistics = new TransferStatistics();
+    private UnmarshallerPool mUnmarshallerPool = new UnmarshallerPool();
     private String mUrl = "https://api.trafikinfo.trafikverket.se/v2/data.xml";
-    private final String requestTemplate = "<REQUEST>\n"
-            + "  <LOGIN authenticationkey=\"%s\" />\n"
-            + "  <QUERY%s>\n"
+    private final String queryTemplate = "  <QUERY%s>\n"
             + "    %s\n"
-            + "  </QUERY>\n"
-            + "</REQUEST>";
+            + "  </QUERY>\n";
+
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Creates a builder for an instance with its own HTTP client settings.
+     *
+     * @return
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
 
     /**
      * Class constructor.
      */
     public TrafficInformation() {
+        mHttpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .build();
+    }
+
+    /**
+     * Class constructor specifying the API key to use.
+     *
+     * @param key
+     */
+    public TrafficInformation(String key) {
+        this();
+        mKey = key;
+    }
+
+    private TrafficInformation(Builder builder) {
+        if (builder.mHttpClient != null) {
+            mHttpClient = builder.mHttpClient;
+        } else {
+            HttpClient.Builder httpClientBuilder = HttpClient.newBuilder().version(builder.mVersion);
+            if (builder.mConnectTimeout != null) {
+                httpClientBuilder.connectTimeout(builder.mConnectTimeout);
+            }
+            if (builder.mExecutor != null) {
+                httpClientBuilder.executor(builder.mExecutor);
+            }
+            if (builder.mProxySelector != null) {
+                httpClientBuilder.proxy(builder.mProxySelector);
+            }
+            mHttpClient = httpClientBuilder.build();
+        }
+
+        if (builder.mExecutor != null) {
+            mExecutor = builder.mExecutor;
+        }
+        mKey = builder.mKey;
+        mTimeout = builder.mTimeout;
+        mTimeouts.putAll(builder.mTimeouts);
+        if (builder.mUrl != null) {
+            mUrl = builder.mUrl;
+        }
+    }
+
+    /**
+     * Creates an empty batch, combining queries of different object types in one request.
+     *
+     * @return
+     */
+    public Batch createBatch() {
+        return new Batch(this);
+    }
+
+    /**
+     * Creates a download of all objects of a query, split into shards sent concurrently.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @param sharding
+     * @return
+     */
+    public <R> BulkDownload<R> createBulkDownload(ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails, BulkDownload.Sharding sharding) {
+        return new BulkDownload<>(this, objectType, queryAttributes, queryDetails, sharding);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public TreeMap<String, String> createQueryAttributes() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     *
+     * @return the circuit breaker, or <code>null</code>
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     *
+     * @return the executor running the unmarshal stage of asynchronous calls
+     */
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     *
+     * @param objectType
+     * @return the hedging policy of the object type, or <code>null</code>
+     */
+    public HedgingPolicy getHedgingPolicy(ObjectType<?> objectType) {
+        return mHedgingPolicies.get(objectType);
+    }
+
+    /**
+     *
+     * @return the HTTP client sending the requests
+     */
+    public HttpClient getHttpClient() {
+        return mHttpClient;
+    }
+
+    /**
+     *
+     * @return the keep-alive interval in use, or <code>null</code>
+     */
+    public synchronized Duration getKeepAlive() {
+        return mKeepAlive;
+    }
+
+    /**
+     *
+     * @return the specified API key
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     *
+     * @return the rate limiter shared by all requests, or <code>null</code>
+     */
+    public RateLimiter getRateLimiter() {
+        return mRateLimiter;
+    }
+
+    /**
+     *
+     * @param objectType
+     * @return the rate limiter of the object type, or <code>null</code>
+     */
+    public RateLimiter getRateLimiter(ObjectType<?> objectType) {
+        return mRateLimiters.get(objectType);
+    }
+
+    /**
+     *
+     * @return the coalescing counters
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return mRequestCoalescer;
+    }
+
+    /**
+     *
+     * @return the result cache, or <code>null</code>
+     */
+    public ResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    /**
+     *
+     * @return the future of the last {@link #prewarm(java.util.concurrent.Executor)}, completed with its startup cost, or <code>null</code> if
+     * not prewarmed
+     */
+    public CompletableFuture<Duration> getReadiness() {
+        return mReadiness;
+    }
+
+    /**
+     *
+     * @return the retry policy, or <code>null</code>
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Gets the results of any object type.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @return A list of <code>results</code>. Remember to check info and errors.
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public <R> List<R> getResults(ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+        return getResults(objectType, getQuery(queryAttributes, objectType, queryDetails), file);
+    }
+
+    /**
+     * Gets the results of a built query.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param query
+     * @param parameters the values of the parameters of the query. <code>null</code> is valid for a query without parameters.
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @return A list of <code>results</code>. Remember to check info and errors.
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public <R> List<R> getResults(Query<R> query, Map<String, ?> parameters, File file) throws IOException, InterruptedException, JAXBException {
+        return getResults(query.getObjectType(), query.toXml(parameters), file);
+    }
+
+    <R> List<R> getResults(ObjectType<R> objectType, String query, File file) throws IOException, InterruptedException, JAXBException {
+        ResponseCache responseCache = mResponseCache;
+        if (responseCache != null && file == null && responseCache.isCached(objectType)) {
+            return join(responseCache.get(objectType, getQueryKey(query), () -> loadAsync(objectType, query)));
+        } else if (mCoalescing && file == null) {
+            return mRequestCoalescer.execute(getQueryKey(query), () -> objectType.getResults(getResponse(objectType, getRequest(List.of(query)), null)));
+        }
+
+        return objectType.getResults(getResponse(objectType, getRequest(List.of(query)), file));
+    }
+
+    <R> CompletableFuture<List<R>> getResultsAsync(ObjectType<R> objectType, String query, File file) {
+        ResponseCache responseCache = mResponseCache;
+        if (responseCache != null && file == null && responseCache.isCached(objectType)) {
+            return responseCache.get(objectType, getQueryKey(query), () -> loadAsync(objectType, query));
+        } else if (mCoalescing && file == null) {
+            return mRequestCoalescer.executeAsync(getQueryKey(query), () -> requestResultsAsync(objectType, query, null));
+        }
+
+        return requestResultsAsync(objectType, query, file);
+    }
+
+    /**
+     * Gets the results of any object type from an already saved file.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param file the file to be unmarshalled.
+     * @return A list of <code>results</code>. Remember to check info and errors.
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws JAXBException
+     */
+    public <R> List<R> getResults(ObjectType<R> objectType, File file) throws IOException, InterruptedException, JAXBException {
+        return objectType.getResults(getResponse(objectType.getResponseClass(), file));
+    }
+
+    /**
+     * Gets the results of any object type without blocking the calling thread.
+     * <p>
+     * The request is sent with {@link HttpClient#sendAsync(java.net.http.HttpRequest, java.net.http.HttpResponse.BodyHandler)} and the response
+     * is unmarshalled using the executor of this instance.</p>
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+     * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @return A future list of <code>results</code>. Remember to check info and errors.
+     */
+    public <R> CompletableFuture<List<R>> getResultsAsync(ObjectType<R> objectType, TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+        return getResultsAsync(objectType, getQuery(queryAttributes, objectType, queryDetails), file);
+    }
+
+    /**
+     * Gets the results of a built query without blocking the calling thread.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param query
+     * @param parameters the values of the parameters of the query. <code>null</code> is valid for a query without parameters.
+     * @param file the file to save. If file is null, no file is saved for this call.
+     * @return A future list of <code>results</code>. Remember to check info and errors.
+     */
+    public <R> CompletableFuture<List<R>> getResultsAsync(Query<R> query, Map<String, ?> parameters, File file) {
+        return getResultsAsync(query.getObjectType(), query.toXml(parameters), file);
+    }
+
+    /**
+     *
+     * @return the timeout in use (milliseconds)
+     */
+    public int getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     *
+     * @param objectType
+     * @return the timeout in use for the object type (milliseconds)
+     */
+    public int getTimeout(ObjectType<?> objectType) {
+        return mTimeouts.getOrDefault(objectType, mTimeout);
+    }
+
+    /**
+     *
+     * @return the byte counters of the responses
+     */
+    public TransferStatistics getTransferStatistics() {
+        return mTransferStatistics;
+    }
+
+    /**
+     *
+     * @return the unmarshaller pool in use
+     */
+    public UnmarshallerPool getUnmarshallerPool() {
+        return mUnmarshallerPool;
+    }
+
+    /**
+     *
+     * @return the base service url
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     *
+     * @return the wire format of the url in use
+     */
+    public WireFormat getWireFormat() {
+        return mUrl.endsWith(".json") ? WireFormat.JSON : WireFormat.XML;
+    }
+
+    /**
+     *
+     * @return true if identical concurrent requests share one call, false by default
+     */
+    public boolean isCoalescing() {
+        return mCoalescing;
+    }
+
+    /**
+     *
+     * @return true if responses may be compressed, the default
+     */
+    public boolean isCompression() {
+        return mCompression;
+    }
+
+    /**
+     *
+     * @return true if responses are read straight into the generated classes, false (the default) for JAXB
+     */
+    public boolean isDirectUnmarshalling() {
+        return mDirectUnmarshalling;
+    }
+
+    /**
+     *
+     * @return true if saved files get the response bytes as received, false (the default) for decoded XML
+     */
+    public boolean isSaveCompressed() {
+        return mSaveCompressed;
+    }
+
+    /**
+     * Creates the parsers of all object types in the background using the common pool.
+     *
+     * @return the readiness future, completed with the startup cost
+     */
+    public CompletableFuture<Duration> prewarm() {
+        return prewarm(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the parsers of all object types in the background, they are otherwise created by the first call of each service.
+     *
+     * @param executor the executor creating the parsers
+     * @return the readiness future, completed with the startup cost
+     */
+    public CompletableFuture<Duration> prewarm(Executor executor) {
+        mReadiness = mUnmarshallerPool.prewarm(ObjectType.values().stream()
+                .map(ObjectType::getResponseClass)
+                .collect(Collectors.toList()), executor);
+
+        return mReadiness;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Railroad railroad() {
+        return mRailroad;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Road road() {
+        return mRoad;
+    }
+
+    /**
+     * Subscribes to the results pushed for a query sent with the attribute <code>sseurl="true"</code>.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param result a result of the query, holding the SSEURL in its INFO
+     * @return the subscription, the stream is opened by its first subscriber. Close it when done.
+     * @throws IllegalArgumentException if the result has no SSEURL
+     */
+    public <R> SseSubscription<R> subscribe(ObjectType<R> objectType, R result) {
+        String sseUrl = objectType.getSseUrl(result);
+        if (sseUrl == null || sseUrl.isBlank()) {
+            throw new IllegalArgumentException("The result has no SSEURL, was the query sent with sseurl=\"true\"?");
+        }
+
+        return subscribe(objectType, sseUrl);
+    }
+
+    /**
+     * Subscribes to the results pushed to a Server-Sent Events url.
+     *
+     * @param <R> the RESULT class of the object type
+     * @param objectType
+     * @param sseUrl the SSEURL returned in the INFO of a query
+     * @return the subscription, the stream is opened by its first subscriber. Close it when done.
+     */
+    public <R> SseSubscription<R> subscribe(ObjectType<R> objectType, String sseUrl) {
+        return new SseSubscription<>(this, objectType, sseUrl);
+    }
+
+    /**
+     * Sets the circuit breaker guarding the endpoint, <code>null</code> (the default) disables it.
+     *
+     * @param circuitBreaker
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        mCircuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Sets whether an identical request already in flight is waited for instead of sent again. Requests saving a file are never coalesced.
+     * <p>
+     * Coalesced callers share the same result objects, which must not be modified.</p>
+     *
+     * @param coalescing
+     */
+    public void setCoalescing(boolean coalescing) {
+        mCoalescing = coalescing;
+    }
+
+    /**
+     * Sets whether gzip or deflate compressed responses are accepted. They are decompressed while being parsed.
+     *
+     * @param compression
+     */
+    public void setCompression(boolean compression) {
+        mCompression = compression;
+    }
+
+    /**
+     * Sets whether responses are read straight into the generated classes instead of through a JAXB unmarshaller.
+     * <p>
+     * The readers are generated from the bundled schemas when the project is built and call the setters of the classes, without reflection.
+     * Batches and element streams are read the same way, classes without a generated reader still use JAXB.</p>
+     *
+     * @param directUnmarshalling
+     */
+    public void setDirectUnmarshalling(boolean directUnmarshalling) {
+        mDirectUnmarshalling = directUnmarshalling;
+    }
+
+    /**
+     * Sets the executor running the unmarshal stage of asynchronous calls, the default is the common pool.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets the policy hedging slow requests of an object type, <code>null</code> (the default) sends every request once.
+     *
+     * @param objectType
+     * @param hedgingPolicy
+     */
+    public void setHedgingPolicy(ObjectType<?> objectType, HedgingPolicy hedgingPolicy) {
+        if (hedgingPolicy == null) {
+            mHedgingPolicies.remove(objectType);
+        } else {
+            mHedgingPolicies.put(objectType, hedgingPolicy);
+        }
+    }
+
+    /**
+     * Keeps the connection alive with a cheap ReasonCode query whenever no request has been sent during the interval.
+     * <p>
+     * <code>null</code> (the default) stops the pings, which must be done before dropping an instance that keeps alive.</p>
+     *
+     * @param interval
+     */
+    public synchronized void setKeepAlive(Duration interval) {
+        if (mKeepAliveFuture != null) {
+            mKeepAliveFuture.cancel(false);
+            mKeepAliveFuture = null;
+        }
+
+        mKeepAlive = interval;
+        if (interval != null) {
+            long nanos = interval.toNanos();
+            mKeepAliveFuture = KEEP_ALIVE_SCHEDULER.scheduleWithFixedDelay(() -> {
+                if (System.nanoTime() - mLastRequestNanos >= nanos) {
+                    ping().exceptionally(ex -> {
+                        LOGGER.log(Level.FINE, "Keep-alive ping failed", ex);
+                        return null;
+                    });
+                }
+            }, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sets the API key to use.
+     *
+     * @param key
+     */
+    public void setKey(String key) {
+        mKey = key;
+    }
+
+    /**
+     * Sets the rate limiter shared by all requests, typically matching the limits of the API key. <code>null</code> removes it.
+     *
+     * @param rateLimiter
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        mRateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter of an object type, acquired before the shared one. Giving each object type its own limiter keeps bursts of one type
+     * from starving the others. <code>null</code> removes it.
+     *
+     * @param objectType
+     * @param rateLimiter
+     */
+    public void setRateLimiter(ObjectType<?> objectType, RateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            mRateLimiters.remove(objectType);
+        } else {
+            mRateLimiters.put(objectType, rateLimiter);
+        }
+    }
+
+    /**
+     * Sets the cache of query results, <code>null</code> (the default) disables caching. Requests saving a file bypass the cache.
+     *
+     * @param responseCache
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        mResponseCache = responseCache;
+    }
+
+    /**
+     * Sets the policy retrying transient failures, <code>null</code> (the default) disables retries.
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets whether saved files get the response bytes as received, possibly gzip or deflate compressed, instead of decoded XML. Compressed
+     * files are recognized by their gzip or zlib header when read back.
+     *
+     * @param saveCompressed
+     */
+    public void setSaveCompressed(boolean saveCompressed) {
+        mSaveCompressed = saveCompressed;
+    }
+
+    /**
+     * Sets the timeout to use (milliseconds).
+     *
+     * @param timeout
+     */
+    public void setTimeout(int timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Sets the timeout to use for an object type (milliseconds), <code>null</code> falls back to the common timeout.
+     *
+     * @param objectType
+     * @param timeout
+     */
+    public void setTimeout(ObjectType<?> objectType, Integer timeout) {
+        if (timeout == null) {
+            mTimeouts.remove(objectType);
+        } else {
+            mTimeouts.put(objectType, timeout);
+        }
+    }
+
+    /**
+     * Sets the unmarshaller pool to use, it may be shared between instances.
+     *
+     * @param unmarshallerPool
+     */
+    public void setUnmarshallerPool(UnmarshallerPool unmarshallerPool) {
+        mUnmarshallerPool = unmarshallerPool;
+    }
+
+    /**
+     *
+     * @param url
+     */
+    public void setUrl(String url) {
+        mUrl = url;
+    }
+
+    /**
+     * Sets the wire format of the responses by switching the url between <code>data.xml</code> and <code>data.json</code>.
+     * <p>
+     * Requests are sent as XML either way. JSON responses, and saved JSON files, are mapped onto the same classes as the XML.</p>
+     *
+     * @param wireFormat
+     */
+    public void setWireFormat(WireFormat wireFormat) {
+        mUrl = mUrl.replaceFirst("\\.(xml|json)$", wireFormat == WireFormat.JSON ? ".json" : ".xml");
+    }
+
+    /**
+     * Opens the connection to the url with a cheap ReasonCode query, while creating the parsers of the given object types.
+     * <p>
+     * DNS lookup, TLS handshake, HTTP/2 negotiation and JAXB initialization are otherwise paid by the first calls. Combine with
+     * {@link #setKeepAlive(java.time.Duration)} to keep the connection open.</p>
+     *
+     * @param objectTypes the object types whose parsers to create, none only opens the connection
+     * @return the readiness future, completed with the startup cost
+     */
+    public CompletableFuture<Duration> warmUp(ObjectType<?>... objectTypes) {
+        long start = System.nanoTime();
+        CompletableFuture<Duration> parsers = mUnmarshallerPool.prewarm(Stream.of(objectTypes)
+                .map(ObjectType::getResponseClass)
+                .collect(Collectors.toList()), mExecutor);
+        mReadiness = CompletableFuture.allOf(parsers, ping()).thenApply(v -> Duration.ofNanos(System.nanoTime() - start));
+
+        return mReadiness;
+    }
+
+    /**
+     * Sends the request within the limits of the rate limiters, retrying transient failures as told by the retry policy and guarded by the
+     * circuit breaker. The in-flight slots are held until the body stream is closed. When the retries are exhausted the last response, or
+     * exception, is handed over.
+     *
+     * @param objectType the object type of the request, or <code>null</code> if it has several
+     */
+    HttpResponse<InputStream> getHttpResponse(ObjectType<?> objectType, String requestString) throws IOException, InterruptedException {
+        RetryPolicy retryPolicy = mRetryPolicy;
+        CircuitBreaker circuitBreaker = mCircuitBreaker;
+        String endpoint = mUrl;
+        for (int attempt = 1;; attempt++) {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquire(endpoint);
+            }
+
+            HttpResponse<InputStream> response = null;
+            IOException failure = null;
+            try {
+                response = attempt(objectType, requestString);
+            } catch (IOException ex) {
+                if (!isTransient(ex)) {
+                    cancel(circuitBreaker, endpoint);
+                    throw ex;
+                }
+                failure = ex;
+            } catch (InterruptedException | RuntimeException ex) {
+                cancel(circuitBreaker, endpoint);
+                throw ex;
+            }
+
+            Duration delay = evaluate(retryPolicy, circuitBreaker, endpoint, attempt, response);
+            if (delay == null) {
+                if (failure != null) {
+                    throw failure;
+                }
+
+                return response;
+            }
+
+            LOGGER.log(Level.FINE, "Attempt {0} failed ({1}), retrying in {2}", new Object[]{attempt, failure != null ? failure : response.statusCode(), delay});
+            if (response != null) {
+                response.body().close();
+            }
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+        }
+    }
+
+    /**
+     * Sends the request like {@link #getHttpResponse(se.trixon.trv_traffic_information.ObjectType, java.lang.String)}. Waiting for the
+     * limiters occupies a thread of the executor, retries are delayed without blocking.
+     *
+     * @param objectType the object type of the request, or <code>null</code> if it has several
+     */
+    CompletableFuture<HttpResponse<InputStream>> getHttpResponseAsync(ObjectType<?> objectType, String requestString) {
+        return getHttpResponseAsync(objectType, requestString, mRetryPolicy, mCircuitBreaker, mUrl, 1);
+    }
+
+    String getQuery(TreeMap<String, String> queryAttributes, ObjectType<?> objectType, String queryDetails) {
+        if (queryAttributes == null) {
+            queryAttributes = createQueryAttributes();
+        }
+        queryAttributes.putIfAbsent("objecttype", objectType.getName());
+        queryAttributes.putIfAbsent("schemaversion", objectType.getSchemaVersion());
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : queryAttributes.entrySet()) {
+            sb.append(String.format(" %s=\"%s\"", entry.getKey(), entry.getValue()));
+        }
+
+        if (queryDetails == null) {
+            queryDetails = "";
+        }
+
+        return String.format(queryTemplate, sb.toString(), queryDetails);
+    }
+
+    String getRequest(List<String> queries) {
+        StringBuilder builder = new StringBuilder(256 * (queries.size() + 1))
+                .append("<REQUEST>\n")
+                .append("  <LOGIN authenticationkey=\"").append(mKey).append("\" />\n");
+        for (String query : queries) {
+            builder.append(query);
+        }
+
+        return builder.append("</REQUEST>").toString();
+    }
+
+    /**
+     * Opens the response body, decompressing it if the server applied a content encoding. The file, if given, gets the decoded bytes or the
+     * bytes as received depending on {@link #isSaveCompressed()}.
+     */
+    InputStream openBody(HttpResponse<InputStream> response, File file) throws IOException {
+        mTransferStatistics.responses().increment();
+        InputStream inputStream = new CountingInputStream(response.body(), mTransferStatistics.wireBytes());
+        try {
+            if (file != null && mSaveCompressed) {
+                inputStream = new TeeInputStream(inputStream, new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+            }
+
+            String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+            if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+                mTransferStatistics.compressedResponses().increment();
+                inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+            } else if (encoding.equalsIgnoreCase("deflate")) {
+                mTransferStatistics.compressedResponses().increment();
+                inputStream = inflate(inputStream);
+            } else if (!encoding.equalsIgnoreCase("identity")) {
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
+            }
+
+            inputStream = new CountingInputStream(inputStream, mTransferStatistics.decodedBytes());
+            if (file != null && !mSaveCompressed) {
+                inputStream = new TeeInputStream(inputStream, new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+            }
+        } catch (IOException | RuntimeException ex) {
+            try {
+                inputStream.close();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw ex;
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Opens a saved response, decompressing it if it is gzip or zlib (deflate) compressed.
+     */
+    InputStream openFile(File file) throws IOException {
+        BufferedInputStream inputStream = new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE);
+        try {
+            inputStream.mark(2);
+            int b0 = inputStream.read();
+            int b1 = inputStream.read();
+            inputStream.reset();
+
+            if ((b0 | b1 << 8) == GZIPInputStream.GZIP_MAGIC) {
+                return new GZIPInputStream(inputStream, BUFFER_SIZE);
+            } else if (b0 == ZLIB_DEFLATE && b1 != -1 && (b0 << 8 | b1) % 31 == 0) {
+                return inflate(inputStream);
+            }
+        } catch (IOException | RuntimeException ex) {
+            inputStream.close();
+            throw ex;
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Creates a reader of an XML or JSON document, telling them apart by the first character.
+     */
+    static XMLStreamReader createXMLStreamReader(InputStream inputStream) throws IOException, XMLStreamException {
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        bufferedInputStream.mark(BUFFER_SIZE);
+        int c;
+        int count = 0;
+        do {
+            c = bufferedInputStream.read();
+        } while ((c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0xEF || c == 0xBB || c == 0xBF) && ++count < BUFFER_SIZE);
+        bufferedInputStream.reset();
+
+        if (c == '{') {
+            return new JsonStreamReader(new InputStreamReader(bufferedInputStream, StandardCharsets.UTF_8));
+        }
+
+        return XML_INPUT_FACTORY.createXMLStreamReader(bufferedInputStream);
+    }
+
+    /**
+     * Waits for a future, unwrapping the exceptions thrown by the synchronous methods.
+     */
+    static <T> T join(CompletableFuture<T> future) throws IOException, InterruptedException, JAXBException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw new IOException("The request was interrupted", cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        return mHttpClient.send(request, bodyHandler);
+    }
+
+    /**
+     * Unmarshals the stream as it arrives and closes it.
+     */
+    <T> T unmarshal(Class<T> clazz, InputStream inputStream) throws IOException, JAXBException {
+        try (inputStream) {
+            XMLStreamReader reader;
+            try {
+                reader = createXMLStreamReader(inputStream);
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex);
+            }
+
+            if (mDirectUnmarshalling && StaxUnmarshaller.canUnmarshal(clazz)) {
+                try {
+                    return StaxUnmarshaller.unmarshal(clazz, reader, mUnmarshallerPool.getListener());
+                } catch (XMLStreamException ex) {
+                    throw new UnmarshalException(ex);
+                } finally {
+                    try {
+                        reader.close();
+                    } catch (XMLStreamException ex) {
+                        //nvm
+                    }
+                }
+            }
+
+            Unmarshaller unmarshaller = mUnmarshallerPool.borrow(clazz);
+            try {
+                return unmarshaller.unmarshal(reader, clazz).getValue();
+            } finally {
+                mUnmarshallerPool.release(clazz, unmarshaller);
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    //nvm
+                }
+            }
+        }
+    }
+
+    private HttpRequest createHttpRequest(ObjectType<?> objectType, String requestString) {
+        mLastRequestNanos = System.nanoTime();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(requestString))
+                .uri(URI.create(mUrl))
+                .header("Content-Type", "text/xml")
+                .timeout(Duration.ofMillis(objectType == null ? mTimeout : getTimeout(objectType)));
+
+        if (mCompression) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Acquires the limiter of the object type, then the shared one. If the shared one fails, the object type gets its slot and token back.
+     *
+     * @return releases the acquired in-flight slots, once
+     */
+    private Runnable acquire(ObjectType<?> objectType) throws IOException, InterruptedException {
+        RateLimiter typeLimiter = objectType == null ? null : mRateLimiters.get(objectType);
+        RateLimiter limiter = mRateLimiter;
+        if (typeLimiter != null) {
+            typeLimiter.acquire();
+        }
+
+        if (limiter != null) {
+            try {
+                limiter.acquire();
+            } catch (IOException | InterruptedException | RuntimeException ex) {
+                if (typeLimiter != null) {
+                    typeLimiter.cancel();
+                }
+                throw ex;
+            }
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                if (limiter != null) {
+                    limiter.release();
+                }
+                if (typeLimiter != null) {
+                    typeLimiter.release();
+                }
+            }
+        };
     }
 
     /**
-     * Class constructor specifying the API key to use.
-     *
-     * @param key
+     * Sends the request once, within the limits of the rate limiters. The in-flight slots are held until the body stream is closed.
      */
-    public TrafficInformation(String key) {
-        mKey = key;
+    private HttpResponse<InputStream> attempt(ObjectType<?> objectType, String requestString) throws IOException, InterruptedException {
+        HedgingPolicy hedgingPolicy = objectType == null ? null : mHedgingPolicies.get(objectType);
+        if (hedgingPolicy != null) {
+            CompletableFuture<HttpResponse<InputStream>> future = hedgingPolicy.execute(() -> attemptAsync(objectType, requestString), mExecutor);
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                future.cancel(true);
+                throw ex;
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                } else if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new IOException(ex.getCause());
+            }
+        }
+
+        Runnable release = acquire(objectType);
+        try {
+            HttpResponse<InputStream> response = mHttpClient.send(createHttpRequest(objectType, requestString), createBodyHandler(release));
+
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            release.run();
+            throw ex;
+        }
     }
 
     /**
-     *
-     * @return
+     * Sends the request once, within the limits of the rate limiters. Waiting for the limiters occupies a thread of the executor.
+     * <p>
+     * Cancelling the returned future before the request is sent gives back the in-flight slots. A request already sent is not aborted, the
+     * HTTP client of Java 11 ignores the cancellation of its futures, instead the body is closed when the response arrives. That also gives
+     * back the in-flight slots.</p>
      */
-    public TreeMap<String, String> createQueryAttributes() {
-        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private CompletableFuture<HttpResponse<InputStream>> attemptAsync(ObjectType<?> objectType, String requestString) {
+        HttpRequest request = createHttpRequest(objectType, requestString);
+        if (mRateLimiter == null && (objectType == null || !mRateLimiters.containsKey(objectType))) {
+            CompletableFuture<HttpResponse<InputStream>> send = mHttpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            // A dependent future, cancelling it leaves the response to be discarded
+            CompletableFuture<HttpResponse<InputStream>> future = send.thenApply(response -> response);
+            future.whenComplete((response, ex) -> {
+                if (future.isCancelled()) {
+                    discard(send);
+                }
+            });
+
+            return future;
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> cancelled = CompletableFuture.failedFuture(new CancellationException());
+        AtomicReference<CompletableFuture<HttpResponse<InputStream>>> sent = new AtomicReference<>();
+        CompletableFuture<HttpResponse<InputStream>> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return acquire(objectType);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            }
+        }, mExecutor).thenCompose(release -> {
+            if (sent.get() != null) {
+                release.run();
+
+                return cancelled;
+            }
+
+            CompletableFuture<HttpResponse<InputStream>> send = mHttpClient.sendAsync(request, createBodyHandler(release));
+            send.whenComplete((response, ex) -> {
+                if (ex != null) {
+                    release.run();
+                }
+            });
+            if (!sent.compareAndSet(null, send)) {
+                discard(send);
+            }
+
+            return send;
+        });
+
+        future.whenComplete((response, ex) -> {
+            if (future.isCancelled()) {
+                CompletableFuture<HttpResponse<InputStream>> send = sent.getAndSet(cancelled);
+                if (send != null) {
+                    discard(send);
+                }
+            }
+        });
+
+        return future;
     }
 
-    /**
-     *
-     * @return the specified API key
-     */
-    public String getKey() {
-        return mKey;
+    private void cancel(CircuitBreaker circuitBreaker, String endpoint) {
+        if (circuitBreaker != null) {
+            circuitBreaker.cancel(endpoint);
+        }
+    }
+
+    private HttpResponse.BodyHandler<InputStream> createBodyHandler(Runnable release) {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(), inputStream -> new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release.run();
+                }
+            }
+        });
     }
 
     /**
+     * Records the outcome of an attempt.
      *
-     * @return the timeout in use (milliseconds)
+     * @param response the response of the attempt, or <code>null</code> if it failed with a transient exception
+     * @return the delay before the next attempt, or <code>null</code> if there will be none
      */
-    public int getTimeout() {
-        return mTimeout;
+    private Duration evaluate(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker, String endpoint, int attempt, HttpResponse<?> response) {
+        boolean failed = response == null || RetryPolicy.isRetryable(response.statusCode());
+        if (circuitBreaker != null) {
+            circuitBreaker.record(endpoint, !failed);
+        }
+
+        return retryPolicy == null ? null : retryPolicy.evaluate(attempt, failed, response);
     }
 
     /**
-     *
-     * @return the base service url
+     * Closes the body of a response nobody waits for once it arrives, which gives back its connection and in-flight slots.
      */
-    public String getUrl() {
-        return mUrl;
+    private void discard(CompletableFuture<HttpResponse<InputStream>> send) {
+        send.thenAccept(response -> {
+            try {
+                response.body().close();
+            } catch (IOException ex) {
+                //nvm
+            }
+        });
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> getHttpResponseAsync(ObjectType<?> objectType, String requestString, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker, String endpoint, int attempt) {
+        if (circuitBreaker != null) {
+            try {
+                circuitBreaker.acquire(endpoint);
+            } catch (IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        HedgingPolicy hedgingPolicy = objectType == null ? null : mHedgingPolicies.get(objectType);
+        CompletableFuture<HttpResponse<InputStream>> future = hedgingPolicy == null
+                ? attemptAsync(objectType, requestString)
+                : hedgingPolicy.execute(() -> attemptAsync(objectType, requestString), mExecutor);
+
+        return future.handle((response, ex) -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause != null && !(cause instanceof IOException && isTransient((IOException) cause))) {
+                cancel(circuitBreaker, endpoint);
+
+                return CompletableFuture.<HttpResponse<InputStream>>failedFuture(cause);
+            }
+
+            Duration delay = evaluate(retryPolicy, circuitBreaker, endpoint, attempt, response);
+            if (delay == null) {
+                return cause != null ? CompletableFuture.<HttpResponse<InputStream>>failedFuture(cause) : CompletableFuture.completedFuture(response);
+            }
+
+            LOGGER.log(Level.FINE, "Attempt {0} failed ({1}), retrying in {2}", new Object[]{attempt, cause != null ? cause : response.statusCode(), delay});
+            if (response != null) {
+                try {
+                    response.body().close();
+                } catch (IOException closeEx) {
+                    //nvm
+                }
+            }
+            Executor delayedExecutor = CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, mExecutor);
+
+            return CompletableFuture.runAsync(() -> {
+            }, delayedExecutor).thenCompose(v -> getHttpResponseAsync(objectType, requestString, retryPolicy, circuitBreaker, endpoint, attempt + 1));
+        }).thenCompose(next -> next);
     }
 
     /**
-     *
-     * @return
+     * The QUERY without the login, with the whitespace between elements removed. Attributes are already sorted by the map.
      */
-    public Railroad railroad() {
-        return mRailroad;
+    private String getQueryKey(String query) {
+        return query.replaceAll(">\\s+<", "><").trim();
+    }
+
+    private String getRequest(TreeMap<String, String> queryAttributes, ObjectType<?> objectType, String queryDetails) {
+        return getRequest(List.of(getQuery(queryAttributes, objectType, queryDetails)));
+    }
+
+    private <T> T getResponse(Class<T> clazz, File file) throws IOException, InterruptedException, JAXBException {
+        return unmarshal(clazz, openFile(file));
+    }
+
+    private Object getResponse(ObjectType<?> objectType, String requestString, File file) throws IOException, InterruptedException, JAXBException {
+        return unmarshal(objectType.getResponseClass(), openBody(getHttpResponse(objectType, requestString), file));
     }
 
     /**
-     *
-     * @return
+     * Inflates a zlib stream, ending the native inflater when the stream is closed.
      */
-    public Road road() {
-        return mRoad;
+    private static InputStream inflate(InputStream inputStream) {
+        Inflater inflater = new Inflater();
+
+        return new InflaterInputStream(inputStream, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
     }
 
     /**
-     * Sets the API key to use.
-     *
-     * @param key
+     * Connection failures and timeouts are transient, rejections by the limiters or an open circuit are not.
      */
-    public void setKey(String key) {
-        mKey = key;
+    private boolean isTransient(IOException ex) {
+        return !(ex instanceof RateLimiter.RejectedException || ex instanceof CircuitBreaker.OpenException);
     }
 
     /**
-     * Sets the timeout to use (milliseconds).
-     *
-     * @param timeout
+     * Gets the results along with their weight, the number of decoded bytes of the response.
      */
-    public void setTimeout(int timeout) {
-        mTimeout = timeout;
+    private <R> CompletableFuture<ResponseCache.Value> loadAsync(ObjectType<R> objectType, String query) {
+        Class<?> responseClass = objectType.getResponseClass();
+
+        return getHttpResponseAsync(objectType, getRequest(List.of(query)))
+                .thenApplyAsync(response -> {
+                    LongAdder weight = new LongAdder();
+                    try {
+                        List<R> results = objectType.getResults(unmarshal(responseClass, new CountingInputStream(openBody(response, null), weight)));
+                        // A server side error may be transient, it is not replayed to later callers
+                        boolean cacheable = results.stream().allMatch(result -> objectType.getError(result) == null);
+
+                        return new ResponseCache.Value(results, weight.sum(), cacheable);
+                    } catch (IOException | JAXBException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, mExecutor);
     }
 
     /**
-     *
-     * @param url
+     * Sends a cheap query and discards the response, leaving an open connection in the pool of the HTTP client.
      */
-    public void setUrl(String url) {
-        mUrl = url;
+    private CompletableFuture<Void> ping() {
+        return getHttpResponseAsync(ObjectType.REASON_CODE, getRequest(List.of(PING_QUERY))).thenAccept(response -> {
+            try (InputStream inputStream = response.body()) {
+                inputStream.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        });
     }
 
-    private HttpResponse<String> getHttpResponse(String requestString) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .POST(HttpRequest.BodyPublishers.ofString(requestString))
-                .uri(URI.create(mUrl))
-                .header("Content-Type", "text/xml")
-                .timeout(Duration.ofMillis(mTimeout))
-                .build();
+    private <R> CompletableFuture<List<R>> requestResultsAsync(ObjectType<R> objectType, String query, File file) {
+        Class<?> responseClass = objectType.getResponseClass();
+
+        return getHttpResponseAsync(objectType, getRequest(List.of(query)))
+                .thenApplyAsync(response -> {
+                    try {
+                        return objectType.getResults(unmarshal(responseClass, openBody(response, file)));
+                    } catch (IOException | JAXBException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, mExecutor);
+    }
 
-        HttpResponse<String> response = mHttpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    private <E> Stream<E> stream(ObjectType<?> objectType, String elementName, Class<E> elementClass, TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+        InputStream inputStream = openBody(getHttpResponse(objectType, getRequest(queryAttributes, objectType, queryDetails)), file);
 
-        return response;
+        return new ElementIterator<>(inputStream, mUnmarshallerPool, objectType.getResponseClass(), elementName, elementClass, mDirectUnmarshalling).stream();
     }
 
-    private String getRequest(TreeMap<String, String> queryAttributes, String objecttype, String schemaversion, String queryDetails) {
-        if (queryAttributes == null) {
-            queryAttributes = createQueryAttributes();
+    private <E> Stream<E> stream(ObjectType<?> objectType, String elementName, Class<E> elementClass, File file) throws IOException, JAXBException {
+        return new ElementIterator<>(openFile(file), mUnmarshallerPool, objectType.getResponseClass(), elementName, elementClass, mDirectUnmarshalling).stream();
+    }
+
+    /**
+     * Builds a {@link TrafficInformation} with its own HTTP client settings.
+     * <p>
+     * A given HTTP client is used as is, otherwise one is created from the version, connect timeout, proxy and executor.</p>
+     */
+    public static class Builder {
+
+        private Duration mConnectTimeout;
+        private Executor mExecutor;
+        private HttpClient mHttpClient;
+        private String mKey = "";
+        private ProxySelector mProxySelector;
+        private int mTimeout = 30000;
+        private final Map<ObjectType<?>, Integer> mTimeouts = new HashMap<>();
+        private String mUrl;
+        private HttpClient.Version mVersion = HttpClient.Version.HTTP_2;
+
+        private Builder() {
         }
-        queryAttributes.putIfAbsent("objecttype", objecttype);
-        queryAttributes.putIfAbsent("schemaversion", schemaversion);
-        StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, String> entry : queryAttributes.entrySet()) {
-            sb.append(String.format(" %s=\"%s\"", entry.getKey(), entry.getValue()));
+
+        /**
+         *
+         * @return the configured instance
+         */
+        public TrafficInformation build() {
+            return new TrafficInformation(this);
         }
 
-        if (queryDetails == null) {
-            queryDetails = "";
+        /**
+         *
+         * @param connectTimeout
+         * @return
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            mConnectTimeout = connectTimeout;
+
+            return this;
         }
 
-        return String.format(requestTemplate, mKey, sb.toString(), queryDetails);
-    }
+        /**
+         * Sets the executor of the HTTP client and of the unmarshal stage of asynchronous calls.
+         *
+         * @param executor
+         * @return
+         */
+        public Builder executor(Executor executor) {
+            mExecutor = executor;
 
-    private <T> T getResponse(Class<T> clazz, File file) throws IOException, InterruptedException, JAXBException {
-        return ((JAXBElement<T>) getUnmarshaller(clazz, mClassToUnmarshallerLocal).unmarshal(file)).getValue();
-    }
+            return this;
+        }
 
-    private <T> T getResponse(Class<T> clazz, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-        HttpResponse<String> r = getHttpResponse(queryDetails);
-        String s = r.body();
+        /**
+         * Sets the HTTP client to use, the version, connect timeout and proxy of the builder are then ignored.
+         *
+         * @param httpClient
+         * @return
+         */
+        public Builder httpClient(HttpClient httpClient) {
+            mHttpClient = httpClient;
 
-        if (file != null) {
-            Files.writeString(file.toPath(), s, Charset.forName("utf-8"));
+            return this;
         }
 
-        return ((JAXBElement<T>) getUnmarshaller(clazz, mClassToUnmarshallerRemote).unmarshal(new StringReader(s))).getValue();
-    }
+        /**
+         *
+         * @param key the API key to use
+         * @return
+         */
+        public Builder key(String key) {
+            mKey = key;
+
+            return this;
+        }
+
+        /**
+         *
+         * @param proxySelector
+         * @return
+         */
+        public Builder proxy(ProxySelector proxySelector) {
+            mProxySelector = proxySelector;
+
+            return this;
+        }
+
+        /**
+         *
+         * @param timeout the request timeout (milliseconds)
+         * @return
+         */
+        public Builder timeout(int timeout) {
+            mTimeout = timeout;
+
+            return this;
+        }
+
+        /**
+         *
+         * @param objectType
+         * @param timeout the request timeout of the object type (milliseconds)
+         * @return
+         */
+        public Builder timeout(ObjectType<?> objectType, int timeout) {
+            mTimeouts.put(objectType, timeout);
+
+            return this;
+        }
+
+        /**
+         *
+         * @param url
+         * @return
+         */
+        public Builder url(String url) {
+            mUrl = url;
+
+            return this;
+        }
+
+        /**
+         *
+         * @param version HTTP_1_1 or HTTP_2 (the default)
+         * @return
+         */
+        public Builder version(HttpClient.Version version) {
+            mVersion = version;
 
-    private Unmarshaller getUnmarshaller(Class clazz, ConcurrentHashMap<Class, Unmarshaller> classToUnmarshaller) {
-        Unmarshaller unmarshaller = classToUnmarshaller.computeIfAbsent(clazz, k -> {
+            return this;
+        }
+
+        /**
+         * Runs the HTTP client and the unmarshal stage on virtual threads, one per task.
+         * <p>
+         * The executor is created here and never shut down by the instance. Its threads are daemon threads that end with their task, so it
+         * holds nothing once idle. To wait for running tasks, shut down the {@link TrafficInformation#getExecutor()} as an
+         * {@link java.util.concurrent.ExecutorService}.</p>
+         *
+         * @return
+         * @throws UnsupportedOperationException before Java 19, and on Java 19 and 20 unless started with <code>--enable-preview</code>
+         */
+        public Builder virtualThreads() {
             try {
-                return JAXBContext.newInstance(k).createUnmarshaller();
-            } catch (JAXBException ex) {
-                Logger.getLogger(TrafficInformation.class.getName()).log(Level.SEVERE, null, ex);
-                return null;
+                return executor((Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+            } catch (NoSuchMethodException ex) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21, or Java 19 or 20 with --enable-preview", ex);
+            } catch (InvocationTargetException ex) {
+                // The preview API of Java 19 and 20 refuses to run without --enable-preview
+                throw new UnsupportedOperationException("Virtual threads require Java 21, or Java 19 or 20 with --enable-preview: " + ex.getCause().getMessage(), ex.getCause());
+            } catch (ReflectiveOperationException ex) {
+                throw new UnsupportedOperationException("Virtual threads are not available", ex);
             }
-        });
+        }
+    }
 
-        return unmarshaller;
+    /**
+     * The format of the responses.
+     */
+    public enum WireFormat {
+        XML, JSON;
     }
 
     /**
@@ -243,8 +1548,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESULT> getRailCrossingResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESPONSE.class,
-                    getRequest(queryAttributes, "RailCrossing", "1.4", queryDetails), file).getRESULT();
+            return getResults(ObjectType.RAIL_CROSSING, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -256,7 +1560,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESULT> getRailCrossingResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.RAIL_CROSSING, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.railroad.railcrossing.v1_4.RESULT>> getRailCrossingResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.RAIL_CROSSING, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -270,8 +1585,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT> getReasonCodeResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "ReasonCode", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.REASON_CODE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -283,7 +1597,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT> getReasonCodeResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.REASON_CODE, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT>> getReasonCodeResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.REASON_CODE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -297,8 +1622,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT> getTrainAnnouncementResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESPONSE.class,
-                    getRequest(queryAttributes, "TrainAnnouncement", "1.6", queryDetails), file).getRESULT();
+            return getResults(ObjectType.TRAIN_ANNOUNCEMENT, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -310,7 +1634,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT> getTrainAnnouncementResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.TRAIN_ANNOUNCEMENT, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT>> getTrainAnnouncementResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAIN_ANNOUNCEMENT, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -324,8 +1659,44 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT> getTrainMessageResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESPONSE.class,
-                    getRequest(queryAttributes, "TrainMessage", "1.6", queryDetails), file).getRESULT();
+            return getResults(ObjectType.TRAIN_MESSAGE, queryAttributes, queryDetails, file);
+        }
+
+        /**
+         *
+         * @param file the file to be unmarshalled.
+         * @return A list of <code>results</code>. Remember to check info and errors.
+         * @throws IOException
+         * @throws InterruptedException
+         * @throws JAXBException
+         */
+        public List<se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT> getTrainMessageResults(File file) throws IOException, InterruptedException, JAXBException {
+            return getResults(ObjectType.TRAIN_MESSAGE, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT>> getTrainMessageResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAIN_MESSAGE, queryAttributes, queryDetails, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A list of <code>results</code>. Remember to check info and errors.
+         * @throws IOException
+         * @throws InterruptedException
+         * @throws JAXBException
+         */
+        public List<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT> getTrainStationResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+            return getResults(ObjectType.TRAIN_STATION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -336,35 +1707,46 @@ public class TrafficInformation {
          * @throws InterruptedException
          * @throws JAXBException
          */
-        public List<se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESULT> getTrainMessageResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainmessage.v1_6.RESPONSE.class, file).getRESULT();
+        public List<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT> getTrainStationResults(File file) throws IOException, InterruptedException, JAXBException {
+            return getResults(ObjectType.TRAIN_STATION, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT>> getTrainStationResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAIN_STATION, queryAttributes, queryDetails, file);
         }
 
         /**
+         * Streams the train announcements one at a time, without materializing the response. Close the stream when done.
          *
          * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
          * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
          * @param file the file to save. If file is null, no file is saved for this call.
-         * @return A list of <code>results</code>. Remember to check info and errors.
+         * @return A lazy stream of <code>TrainAnnouncement</code>. Errors are thrown as <code>UncheckedIOException</code>.
          * @throws IOException
          * @throws InterruptedException
          * @throws JAXBException
          */
-        public List<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT> getTrainStationResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainstation.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "TrainStation", "1", queryDetails), file).getRESULT();
+        public Stream<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.TrainAnnouncement> streamTrainAnnouncements(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+            return stream(ObjectType.TRAIN_ANNOUNCEMENT, "TrainAnnouncement", se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.TrainAnnouncement.class, queryAttributes, queryDetails, file);
         }
 
         /**
+         * Streams the train announcements of an already saved file one at a time. Close the stream when done.
          *
          * @param file the file to be unmarshalled.
-         * @return A list of <code>results</code>. Remember to check info and errors.
+         * @return A lazy stream of <code>TrainAnnouncement</code>. Errors are thrown as <code>UncheckedIOException</code>.
          * @throws IOException
-         * @throws InterruptedException
          * @throws JAXBException
          */
-        public List<se.trixon.trv_traffic_information.railroad.trainstation.v1.RESULT> getTrainStationResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.railroad.trainstation.v1.RESPONSE.class, file).getRESULT();
+        public Stream<se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.TrainAnnouncement> streamTrainAnnouncements(File file) throws IOException, JAXBException {
+            return stream(ObjectType.TRAIN_ANNOUNCEMENT, "TrainAnnouncement", se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.TrainAnnouncement.class, file);
         }
     }
 
@@ -389,8 +1771,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.camera.v1.RESULT> getCameraResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.camera.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "Camera", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.CAMERA, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -402,7 +1783,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.camera.v1.RESULT> getCameraResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.camera.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.CAMERA, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.camera.v1.RESULT>> getCameraResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.CAMERA, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -416,8 +1808,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESULT> getFerryAnnouncementResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESPONSE.class,
-                    getRequest(queryAttributes, "FerryAnnouncement", "1.2", queryDetails), file).getRESULT();
+            return getResults(ObjectType.FERRY_ANNOUNCEMENT, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -429,7 +1820,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESULT> getFerryAnnouncementResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.FERRY_ANNOUNCEMENT, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.ferryannonuncement.v1_2.RESULT>> getFerryAnnouncementResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.FERRY_ANNOUNCEMENT, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -443,8 +1845,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESULT> getFerryRouteResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESPONSE.class,
-                    getRequest(queryAttributes, "FerryRoute", "1.2", queryDetails), file).getRESULT();
+            return getResults(ObjectType.FERRY_ROUTE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -456,7 +1857,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESULT> getFerryRouteResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.FERRY_ROUTE, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.ferryroute.v1_2.RESULT>> getFerryRouteResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.FERRY_ROUTE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -470,8 +1882,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.icon.v1.RESULT> getIconResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.icon.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "Icon", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.ICON, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -483,7 +1894,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.icon.v1.RESULT> getIconResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.icon.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.ICON, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.icon.v1.RESULT>> getIconResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.ICON, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -497,8 +1919,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.parking.v1_4.RESULT> getParkingResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.parking.v1_4.RESPONSE.class,
-                    getRequest(queryAttributes, "Parking", "1.4", queryDetails), file).getRESULT();
+            return getResults(ObjectType.PARKING, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -510,7 +1931,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.parking.v1_4.RESULT> getParkingResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.parking.v1_4.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.PARKING, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.parking.v1_4.RESULT>> getParkingResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.PARKING, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -524,8 +1956,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESULT> getRoadConditionOverviewResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "RoadConditionOverview", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.ROAD_CONDITION_OVERVIEW, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -537,7 +1968,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESULT> getRoadConditionOverviewResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.ROAD_CONDITION_OVERVIEW, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.roadconditionoverview.v1.RESULT>> getRoadConditionOverviewResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.ROAD_CONDITION_OVERVIEW, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -551,8 +1993,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESULT> getRoadConditionResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESPONSE.class,
-                    getRequest(queryAttributes, "RoadCondition", "1.2", queryDetails), file).getRESULT();
+            return getResults(ObjectType.ROAD_CONDITION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -564,7 +2005,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESULT> getRoadConditionResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.ROAD_CONDITION, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.roadcondition.v1_2.RESULT>> getRoadConditionResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.ROAD_CONDITION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -578,8 +2030,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.situation.v1_4.RESULT> getSituationResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.situation.v1_4.RESPONSE.class,
-                    getRequest(queryAttributes, "Situation", "1.4", queryDetails), file).getRESULT();
+            return getResults(ObjectType.SITUATION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -591,7 +2042,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.situation.v1_4.RESULT> getSituationResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.situation.v1_4.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.SITUATION, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.situation.v1_4.RESULT>> getSituationResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.SITUATION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -605,8 +2067,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESULT> getTrafficFlowResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESPONSE.class,
-                    getRequest(queryAttributes, "TrafficFlow", "1.4", queryDetails), file).getRESULT();
+            return getResults(ObjectType.TRAFFIC_FLOW, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -618,7 +2079,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESULT> getTrafficFlowResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.TRAFFIC_FLOW, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.trafficflow.v1_4.RESULT>> getTrafficFlowResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAFFIC_FLOW, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -632,8 +2104,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESULT> getTrafficSafetyCameraResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "TrafficSafetyCamera", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.TRAFFIC_SAFETY_CAMERA, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -645,7 +2116,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESULT> getTrafficSafetyCameraResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.TRAFFIC_SAFETY_CAMERA, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.trafficsafetycamera.v1.RESULT>> getTrafficSafetyCameraResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAFFIC_SAFETY_CAMERA, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -659,8 +2141,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESULT> getTravelTimeRouteResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESPONSE.class,
-                    getRequest(queryAttributes, "TravelTimeRoute", "1.5", queryDetails), file).getRESULT();
+            return getResults(ObjectType.TRAVEL_TIME_ROUTE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -672,7 +2153,18 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESULT> getTravelTimeRouteResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.TRAVEL_TIME_ROUTE, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.traveltimeroute.v1_5.RESULT>> getTravelTimeRouteResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.TRAVEL_TIME_ROUTE, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -686,8 +2178,7 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.weatherstation.v1.RESULT> getWeatherStationResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.weatherstation.v1.RESPONSE.class,
-                    getRequest(queryAttributes, "WeatherStation", "1", queryDetails), file).getRESULT();
+            return getResults(ObjectType.WEATHER_STATION, queryAttributes, queryDetails, file);
         }
 
         /**
@@ -699,7 +2190,45 @@ public class TrafficInformation {
          * @throws JAXBException
          */
         public List<se.trixon.trv_traffic_information.road.weatherstation.v1.RESULT> getWeatherStationResults(File file) throws IOException, InterruptedException, JAXBException {
-            return getResponse(se.trixon.trv_traffic_information.road.weatherstation.v1.RESPONSE.class, file).getRESULT();
+            return getResults(ObjectType.WEATHER_STATION, file);
+        }
+
+        /**
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A future list of <code>results</code>. Remember to check info and errors.
+         */
+        public CompletableFuture<List<se.trixon.trv_traffic_information.road.weatherstation.v1.RESULT>> getWeatherStationResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+            return getResultsAsync(ObjectType.WEATHER_STATION, queryAttributes, queryDetails, file);
+        }
+
+        /**
+         * Streams the situations one at a time, without materializing the response. Close the stream when done.
+         *
+         * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+         * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+         * @param file the file to save. If file is null, no file is saved for this call.
+         * @return A lazy stream of <code>Situation</code>. Errors are thrown as <code>UncheckedIOException</code>.
+         * @throws IOException
+         * @throws InterruptedException
+         * @throws JAXBException
+         */
+        public Stream<se.trixon.trv_traffic_information.road.situation.v1_4.DynamicObjectType> streamSituations(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+            return stream(ObjectType.SITUATION, "Situation", se.trixon.trv_traffic_information.road.situation.v1_4.DynamicObjectType.class, queryAttributes, queryDetails, file);
+        }
+
+        /**
+         * Streams the situations of an already saved file one at a time. Close the stream when done.
+         *
+         * @param file the file to be unmarshalled.
+         * @return A lazy stream of <code>Situation</code>. Errors are thrown as <code>UncheckedIOException</code>.
+         * @throws IOException
+         * @throws JAXBException
+         */
+        public Stream<se.trixon.trv_traffic_information.road.situation.v1_4.DynamicObjectType> streamSituations(File file) throws IOException, JAXBException {
+            return stream(ObjectType.SITUATION, "Situation", se.trixon.trv_traffic_information.road.situation.v1_4.DynamicObjectType.class, file);
         }
 
         /**
@@ -729,8 +2258,7 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESULT> getMeasurementData100Results(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESPONSE.class,
-                        getRequest(queryAttributes, "MeasurementData100", "1", queryDetails), file).getRESULT();
+                return getResults(ObjectType.MEASUREMENT_DATA_100, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -742,7 +2270,18 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESULT> getMeasurementData100Results(File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESPONSE.class, file).getRESULT();
+                return getResults(ObjectType.MEASUREMENT_DATA_100, file);
+            }
+
+            /**
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A future list of <code>results</code>. Remember to check info and errors.
+             */
+            public CompletableFuture<List<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.RESULT>> getMeasurementData100ResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+                return getResultsAsync(ObjectType.MEASUREMENT_DATA_100, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -756,8 +2295,7 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESULT> getMeasurementData20Results(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESPONSE.class,
-                        getRequest(queryAttributes, "MeasurementData20", "1", queryDetails), file).getRESULT();
+                return getResults(ObjectType.MEASUREMENT_DATA_20, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -769,7 +2307,18 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESULT> getMeasurementData20Results(File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESPONSE.class, file).getRESULT();
+                return getResults(ObjectType.MEASUREMENT_DATA_20, file);
+            }
+
+            /**
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A future list of <code>results</code>. Remember to check info and errors.
+             */
+            public CompletableFuture<List<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.RESULT>> getMeasurementData20ResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+                return getResultsAsync(ObjectType.MEASUREMENT_DATA_20, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -783,8 +2332,7 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESULT> getPavementDataResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESPONSE.class,
-                        getRequest(queryAttributes, "PavementData", "1", queryDetails), file).getRESULT();
+                return getResults(ObjectType.PAVEMENT_DATA, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -796,7 +2344,18 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESULT> getPavementDataResults(File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESPONSE.class, file).getRESULT();
+                return getResults(ObjectType.PAVEMENT_DATA, file);
+            }
+
+            /**
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A future list of <code>results</code>. Remember to check info and errors.
+             */
+            public CompletableFuture<List<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.RESULT>> getPavementDataResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+                return getResultsAsync(ObjectType.PAVEMENT_DATA, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -810,8 +2369,7 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESULT> getRoadDataResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESPONSE.class,
-                        getRequest(queryAttributes, "RoadData", "1", queryDetails), file).getRESULT();
+                return getResults(ObjectType.ROAD_DATA, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -823,7 +2381,18 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESULT> getRoadDataResults(File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESPONSE.class, file).getRESULT();
+                return getResults(ObjectType.ROAD_DATA, file);
+            }
+
+            /**
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A future list of <code>results</code>. Remember to check info and errors.
+             */
+            public CompletableFuture<List<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RESULT>> getRoadDataResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+                return getResultsAsync(ObjectType.ROAD_DATA, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -837,8 +2406,7 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESULT> getRoadGeometryResults(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESPONSE.class,
-                        getRequest(queryAttributes, "RoadGeometry", "1", queryDetails), file).getRESULT();
+                return getResults(ObjectType.ROAD_GEOMETRY, queryAttributes, queryDetails, file);
             }
 
             /**
@@ -850,10 +2418,154 @@ public class TrafficInformation {
              * @throws JAXBException
              */
             public List<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESULT> getRoadGeometryResults(File file) throws IOException, InterruptedException, JAXBException {
-                return getResponse(se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESPONSE.class, file).getRESULT();
+                return getResults(ObjectType.ROAD_GEOMETRY, file);
+            }
+
+            /**
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A future list of <code>results</code>. Remember to check info and errors.
+             */
+            public CompletableFuture<List<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RESULT>> getRoadGeometryResultsAsync(TreeMap<String, String> queryAttributes, String queryDetails, File file) {
+                return getResultsAsync(ObjectType.ROAD_GEOMETRY, queryAttributes, queryDetails, file);
+            }
+
+            /**
+             * Streams the measurement data one at a time, without materializing the response. Close the stream when done.
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A lazy stream of <code>MeasurementData100</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws InterruptedException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.MeasurementData100> streamMeasurementData100(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+                return stream(ObjectType.MEASUREMENT_DATA_100, "MeasurementData100", se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.MeasurementData100.class, queryAttributes, queryDetails, file);
+            }
+
+            /**
+             * Streams the measurement data of an already saved file one at a time. Close the stream when done.
+             *
+             * @param file the file to be unmarshalled.
+             * @return A lazy stream of <code>MeasurementData100</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.MeasurementData100> streamMeasurementData100(File file) throws IOException, JAXBException {
+                return stream(ObjectType.MEASUREMENT_DATA_100, "MeasurementData100", se.trixon.trv_traffic_information.road.surface.measurementdata100.v1.MeasurementData100.class, file);
+            }
+
+            /**
+             * Streams the measurement data one at a time, without materializing the response. Close the stream when done.
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A lazy stream of <code>MeasurementData20</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws InterruptedException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.MeasurementData20> streamMeasurementData20(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+                return stream(ObjectType.MEASUREMENT_DATA_20, "MeasurementData20", se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.MeasurementData20.class, queryAttributes, queryDetails, file);
+            }
+
+            /**
+             * Streams the measurement data of an already saved file one at a time. Close the stream when done.
+             *
+             * @param file the file to be unmarshalled.
+             * @return A lazy stream of <code>MeasurementData20</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.MeasurementData20> streamMeasurementData20(File file) throws IOException, JAXBException {
+                return stream(ObjectType.MEASUREMENT_DATA_20, "MeasurementData20", se.trixon.trv_traffic_information.road.surface.measurementdata20.v1.MeasurementData20.class, file);
+            }
+
+            /**
+             * Streams the pavement data one at a time, without materializing the response. Close the stream when done.
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A lazy stream of <code>PavementData</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws InterruptedException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.PavementData> streamPavementData(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+                return stream(ObjectType.PAVEMENT_DATA, "PavementData", se.trixon.trv_traffic_information.road.surface.pavementdata.v1.PavementData.class, queryAttributes, queryDetails, file);
+            }
+
+            /**
+             * Streams the pavement data of an already saved file one at a time. Close the stream when done.
+             *
+             * @param file the file to be unmarshalled.
+             * @return A lazy stream of <code>PavementData</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.pavementdata.v1.PavementData> streamPavementData(File file) throws IOException, JAXBException {
+                return stream(ObjectType.PAVEMENT_DATA, "PavementData", se.trixon.trv_traffic_information.road.surface.pavementdata.v1.PavementData.class, file);
+            }
+
+            /**
+             * Streams the road data one at a time, without materializing the response. Close the stream when done.
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A lazy stream of <code>RoadData</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws InterruptedException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RoadData> streamRoadData(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+                return stream(ObjectType.ROAD_DATA, "RoadData", se.trixon.trv_traffic_information.road.surface.roaddata.v1.RoadData.class, queryAttributes, queryDetails, file);
+            }
+
+            /**
+             * Streams the road data of an already saved file one at a time. Close the stream when done.
+             *
+             * @param file the file to be unmarshalled.
+             * @return A lazy stream of <code>RoadData</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.roaddata.v1.RoadData> streamRoadData(File file) throws IOException, JAXBException {
+                return stream(ObjectType.ROAD_DATA, "RoadData", se.trixon.trv_traffic_information.road.surface.roaddata.v1.RoadData.class, file);
+            }
+
+            /**
+             * Streams the road geometries one at a time, without materializing the response. Close the stream when done.
+             *
+             * @param queryAttributes the key/value pairs of the QUERY attributes. <code>null</code> is valid.
+             * @param queryDetails the part of the query between &lt;QUERY&gt; and &lt;/QUERY&gt;. <code>null</code> is valid.
+             * @param file the file to save. If file is null, no file is saved for this call.
+             * @return A lazy stream of <code>RoadGeometry</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws InterruptedException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RoadGeometry> streamRoadGeometry(TreeMap<String, String> queryAttributes, String queryDetails, File file) throws IOException, InterruptedException, JAXBException {
+                return stream(ObjectType.ROAD_GEOMETRY, "RoadGeometry", se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RoadGeometry.class, queryAttributes, queryDetails, file);
             }
 
+            /**
+             * Streams the road geometries of an already saved file one at a time. Close the stream when done.
+             *
+             * @param file the file to be unmarshalled.
+             * @return A lazy stream of <code>RoadGeometry</code>. Errors are thrown as <code>UncheckedIOException</code>.
+             * @throws IOException
+             * @throws JAXBException
+             */
+            public Stream<se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RoadGeometry> streamRoadGeometry(File file) throws IOException, JAXBException {
+                return stream(ObjectType.ROAD_GEOMETRY, "RoadGeometry", se.trixon.trv_traffic_information.road.surface.roadgeometry.v1.RoadGeometry.class, file);
+            }
         }
     }
-
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the response bytes received on the wire and after decompression.
+ *
+ * @author Patrik Karlström
+ */
+public class TransferStatistics {
+
+    private final LongAdder mCompressedResponses = new LongAdder();
+    private final LongAdder mDecodedBytes = new LongAdder();
+    private final LongAdder mResponses = new LongAdder();
+    private final LongAdder mWireBytes = new LongAdder();
+
+    TransferStatistics() {
+    }
+
+    /**
+     *
+     * @return the number of responses received with a content encoding
+     */
+    public long getCompressedResponses() {
+        return mCompressedResponses.sum();
+    }
+
+    /**
+     *
+     * @return the wire bytes divided by the decoded bytes, 1.0 if nothing is decoded yet
+     */
+    public double getCompressionRatio() {
+        long decodedBytes = getDecodedBytes();
+
+        return decodedBytes == 0 ? 1.0 : (double) getWireBytes() / decodedBytes;
+    }
+
+    /**
+     *
+     * @return the number of response bytes read after decompression
+     */
+    public long getDecodedBytes() {
+        return mDecodedBytes.sum();
+    }
+
+    /**
+     *
+     * @return the number of responses received
+     */
+    public long getResponses() {
+        return mResponses.sum();
+    }
+
+    /**
+     *
+     * @return the number of response bytes read from the wire
+     */
+    public long getWireBytes() {
+        return mWireBytes.sum();
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void reset() {
+        mCompressedResponses.reset();
+        mDecodedBytes.reset();
+        mResponses.reset();
+        mWireBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("responses=%d, compressed=%d, wire=%d, decoded=%d", getResponses(), getCompressedResponses(), getWireBytes(), getDecodedBytes());
+    }
+
+    LongAdder compressedResponses() {
+        return mCompressedResponses;
+    }
+
+    LongAdder decodedBytes() {
+        return mDecodedBytes;
+    }
+
+    LongAdder responses() {
+        return mResponses;
+    }
+
+    LongAdder wireBytes() {
+        return mWireBytes;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe source of unmarshallers.
+ * <p>
+ * A {@link Unmarshaller} is not thread-safe, but the {@link JAXBContext} it is created from is. The pool keeps one context per class and hands out
+ * unmarshallers that are used by one thread at a time.</p>
+ *
+ * <ul><li>{@link Mode#POOLED} keeps a bounded, lock-free queue of idle unmarshallers per class. Borrowed unmarshallers must be released.</li>
+ * <li>{@link Mode#THREAD_LOCAL} keeps one unmarshaller per class and thread. Releasing is a no-op.</li> </ul>
+ *
+ * @author Patrik Karlström
+ */
+public class UnmarshallerPool {
+
+    private final ConcurrentHashMap<Class<?>, JAXBContext> mClassToContext = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, Idle> mClassToIdle = new ConcurrentHashMap<>();
+    private volatile Unmarshaller.Listener mListener;
+    private final int mMaxIdle;
+    private final Mode mMode;
+    private volatile Duration mPrewarmDuration;
+    private final ThreadLocal<Map<Class<?>, Unmarshaller>> mThreadLocal = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Class constructor using {@link Mode#POOLED} and two idle unmarshallers per class and available processor.
+     */
+    public UnmarshallerPool() {
+        this(Mode.POOLED, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param mode
+     * @param maxIdle the maximum number of idle unmarshallers kept per class, ignored in {@link Mode#THREAD_LOCAL}
+     */
+    public UnmarshallerPool(Mode mode, int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle must not be negative: " + maxIdle);
+        }
+        mMode = mode;
+        mMaxIdle = maxIdle;
+    }
+
+    /**
+     * Gets an unmarshaller for exclusive use by the calling thread until it is released.
+     *
+     * @param clazz the class to unmarshal
+     * @return
+     * @throws JAXBException if no context could be created for the class
+     */
+    public Unmarshaller borrow(Class<?> clazz) throws JAXBException {
+        if (mMode == Mode.THREAD_LOCAL) {
+            Map<Class<?>, Unmarshaller> classToUnmarshaller = mThreadLocal.get();
+            Unmarshaller unmarshaller = classToUnmarshaller.get(clazz);
+            if (unmarshaller == null) {
+                unmarshaller = getContext(clazz).createUnmarshaller();
+                classToUnmarshaller.put(clazz, unmarshaller);
+            }
+            unmarshaller.setListener(mListener);
+
+            return unmarshaller;
+        }
+
+        Unmarshaller unmarshaller = getIdle(clazz).poll();
+        if (unmarshaller == null) {
+            unmarshaller = getContext(clazz).createUnmarshaller();
+        }
+        unmarshaller.setListener(mListener);
+
+        return unmarshaller;
+    }
+
+    /**
+     *
+     * @param clazz
+     * @return the shared context of the class
+     * @throws JAXBException
+     */
+    public JAXBContext getContext(Class<?> clazz) throws JAXBException {
+        JAXBContext context = mClassToContext.get(clazz);
+        if (context == null) {
+            context = JAXBContext.newInstance(clazz);
+            JAXBContext existing = mClassToContext.putIfAbsent(clazz, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     *
+     * @return the listener of the unmarshallers, or <code>null</code>
+     */
+    public Unmarshaller.Listener getListener() {
+        return mListener;
+    }
+
+    /**
+     *
+     * @return the maximum number of idle unmarshallers kept per class
+     */
+    public int getMaxIdle() {
+        return mMaxIdle;
+    }
+
+    /**
+     *
+     * @return the mode in use
+     */
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /**
+     *
+     * @return the wall time spent by the last completed {@link #prewarm(java.util.Collection, java.util.concurrent.Executor)}, or <code>null</code>
+     */
+    public Duration getPrewarmDuration() {
+        return mPrewarmDuration;
+    }
+
+    /**
+     * Creates the contexts of the classes, and one idle unmarshaller for each, using the executor.
+     * <p>
+     * The contexts are created concurrently, one task per class. A context spanning all schema packages is not possible since they all declare
+     * RESPONSE, RESULT, INFO and several other types in the same empty namespace.</p>
+     *
+     * @param classes
+     * @param executor
+     * @return a future completed with the wall time spent when all contexts are ready
+     */
+    public CompletableFuture<Duration> prewarm(Collection<? extends Class<?>> classes, Executor executor) {
+        long start = System.nanoTime();
+        ArrayList<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    release(clazz, getContext(clazz).createUnmarshaller());
+                } catch (JAXBException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            mPrewarmDuration = Duration.ofNanos(System.nanoTime() - start);
+            return mPrewarmDuration;
+        });
+    }
+
+    /**
+     * Returns an unmarshaller obtained from {@link #borrow(java.lang.Class)}. The unmarshaller must not be used by the caller afterwards.
+     *
+     * @param clazz the class used when borrowing
+     * @param unmarshaller
+     */
+    public void release(Class<?> clazz, Unmarshaller unmarshaller) {
+        if (mMode == Mode.THREAD_LOCAL || unmarshaller == null) {
+            return;
+        }
+
+        getIdle(clazz).offer(unmarshaller);
+    }
+
+    /**
+     * Sets the listener given to every borrowed unmarshaller, e.g. a {@link StringPool}. <code>null</code> (the default) removes it.
+     *
+     * @param listener
+     */
+    public void setListener(Unmarshaller.Listener listener) {
+        mListener = listener;
+    }
+
+    private Idle getIdle(Class<?> clazz) {
+        return mClassToIdle.computeIfAbsent(clazz, k -> new Idle());
+    }
+
+    public enum Mode {
+        POOLED, THREAD_LOCAL;
+    }
+
+    private class Idle {
+
+        private final ConcurrentLinkedQueue<Unmarshaller> mQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger mSize = new AtomicInteger();
+
+        private void offer(Unmarshaller unmarshaller) {
+            int size;
+            do {
+                size = mSize.get();
+                if (size >= mMaxIdle) {
+                    return;
+                }
+            } while (!mSize.compareAndSet(size, size + 1));
+
+            mQueue.offer(unmarshaller);
+        }
+
+        private Unmarshaller poll() {
+            Unmarshaller unmarshaller = mQueue.poll();
+            if (unmarshaller != null) {
+                mSize.decrementAndGet();
+            }
+
+            return unmarshaller;
+        }
+    }
+}
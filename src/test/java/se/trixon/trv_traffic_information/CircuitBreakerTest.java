@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import se.trixon.trv_traffic_information.CircuitBreaker.State;
+
+/**
+ * Walks the circuits through their states with a fake clock.
+ *
+ * @author Patrik Karlström
+ */
+public class CircuitBreakerTest {
+
+    private static final String ENDPOINT = "https://api.trafikinfo.trafikverket.se/v2/data.xml";
+
+    private final CircuitBreaker mCircuitBreaker;
+    private final AtomicLong mNanoTime = new AtomicLong();
+
+    public CircuitBreakerTest() {
+        mCircuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(30), mNanoTime::get);
+    }
+
+    @Test
+    public void cancelledTrialLetsAnotherThrough() throws Exception {
+        open();
+        advance(30);
+        mCircuitBreaker.acquire(ENDPOINT);
+        mCircuitBreaker.cancel(ENDPOINT);
+
+        mCircuitBreaker.acquire(ENDPOINT);
+        assertThrows(CircuitBreaker.OpenException.class, () -> mCircuitBreaker.acquire(ENDPOINT));
+    }
+
+    @Test
+    public void circuitsAreIndependent() throws Exception {
+        open();
+
+        assertEquals(State.CLOSED, mCircuitBreaker.getState("other"));
+        mCircuitBreaker.acquire("other");
+    }
+
+    @Test
+    public void failedTrialOpensAgain() throws Exception {
+        open();
+        advance(30);
+        mCircuitBreaker.acquire(ENDPOINT);
+        assertEquals(State.HALF_OPEN, mCircuitBreaker.getState(ENDPOINT));
+        mCircuitBreaker.record(ENDPOINT, false);
+
+        assertEquals(State.OPEN, mCircuitBreaker.getState(ENDPOINT));
+        assertEquals(2, mCircuitBreaker.getOpened());
+        advance(29);
+        assertThrows(CircuitBreaker.OpenException.class, () -> mCircuitBreaker.acquire(ENDPOINT));
+        advance(1);
+        assertEquals(State.HALF_OPEN, mCircuitBreaker.getState(ENDPOINT));
+    }
+
+    @Test
+    public void halfOpensAfterOpenDuration() throws Exception {
+        open();
+        advance(29);
+        assertEquals(State.OPEN, mCircuitBreaker.getState(ENDPOINT));
+        assertThrows(CircuitBreaker.OpenException.class, () -> mCircuitBreaker.acquire(ENDPOINT));
+
+        advance(1);
+        assertEquals(State.HALF_OPEN, mCircuitBreaker.getState(ENDPOINT));
+        mCircuitBreaker.acquire(ENDPOINT);
+        // Only a single trial
+        assertThrows(CircuitBreaker.OpenException.class, () -> mCircuitBreaker.acquire(ENDPOINT));
+        assertEquals(2, mCircuitBreaker.getRejected());
+
+        mCircuitBreaker.record(ENDPOINT, true);
+        assertEquals(State.CLOSED, mCircuitBreaker.getState(ENDPOINT));
+        mCircuitBreaker.acquire(ENDPOINT);
+        mCircuitBreaker.acquire(ENDPOINT);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        mCircuitBreaker.record(ENDPOINT, false);
+        mCircuitBreaker.record(ENDPOINT, false);
+        mCircuitBreaker.record(ENDPOINT, true);
+        mCircuitBreaker.record(ENDPOINT, false);
+        mCircuitBreaker.record(ENDPOINT, false);
+        assertEquals(State.CLOSED, mCircuitBreaker.getState(ENDPOINT));
+        assertEquals(0, mCircuitBreaker.getOpened());
+
+        mCircuitBreaker.record(ENDPOINT, false);
+        assertEquals(State.OPEN, mCircuitBreaker.getState(ENDPOINT));
+        assertEquals(1, mCircuitBreaker.getOpened());
+        assertThrows(CircuitBreaker.OpenException.class, () -> mCircuitBreaker.acquire(ENDPOINT));
+        assertEquals(1, mCircuitBreaker.getRejected());
+    }
+
+    @Test
+    public void resetClosesAll() throws Exception {
+        open();
+        mCircuitBreaker.reset();
+
+        assertEquals(State.CLOSED, mCircuitBreaker.getState(ENDPOINT));
+        mCircuitBreaker.acquire(ENDPOINT);
+    }
+
+    private void advance(long seconds) {
+        mNanoTime.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private void open() {
+        for (int i = 0; i < mCircuitBreaker.getFailureThreshold(); i++) {
+            mCircuitBreaker.record(ENDPOINT, false);
+        }
+        assertEquals(State.OPEN, mCircuitBreaker.getState(ENDPOINT));
+    }
+}
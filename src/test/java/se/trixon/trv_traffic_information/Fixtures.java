@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+import java.util.Map;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Generates RESPONSE documents of an object type in XML and in JSON from the same values.
+ * <p>
+ * The elements of the generated classes are filled down to four levels of nesting, lists get two items. Each element gets a value derived
+ * from its name, so values ending up in the wrong field show.</p>
+ *
+ * @author Patrik Karlström
+ */
+final class Fixtures {
+
+    private static final int MAX_DEPTH = 4;
+    private static final String TIMESTAMP = "2020-06-29T14:40:55.000+02:00";
+
+    /**
+     *
+     * @return a RESPONSE in JSON with one RESULT holding the objects
+     */
+    static String json(ObjectType<?> objectType, int objects) {
+        StringBuilder builder = new StringBuilder("{\"RESPONSE\":{\"RESULT\":[{\"").append(objectType.getName()).append("\":[");
+        for (int i = 0; i < objects; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            appendJson(builder, objectType.getObjectClass(), 0);
+        }
+
+        return builder.append("]}]}}").toString();
+    }
+
+    /**
+     *
+     * @return a RESPONSE in XML with one RESULT holding the objects
+     */
+    static String xml(ObjectType<?> objectType, int objects) {
+        StringBuilder builder = new StringBuilder("<RESPONSE><RESULT>");
+        for (int i = 0; i < objects; i++) {
+            builder.append('<').append(objectType.getName()).append('>');
+            appendXml(builder, objectType.getObjectClass(), 0);
+            builder.append("</").append(objectType.getName()).append('>');
+        }
+
+        return builder.append("</RESULT></RESPONSE>").toString();
+    }
+
+    private static void appendJson(StringBuilder builder, Class<?> clazz, int depth) {
+        builder.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Field> entry : Projection.getElements(clazz).entrySet()) {
+            Class<?> type = getValueType(entry.getValue());
+            if (!isSupported(type, depth)) {
+                continue;
+            }
+
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append('"').append(entry.getKey()).append("\":");
+            boolean list = List.class.isAssignableFrom(entry.getValue().getType());
+            if (list) {
+                builder.append('[');
+            }
+            for (int i = 0; i < (list ? 2 : 1); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                if (isSimple(type)) {
+                    String value = getValue(type, entry.getKey());
+                    boolean quoted = type == String.class || type == XMLGregorianCalendar.class;
+                    builder.append(quoted ? "\"" : "").append(value).append(quoted ? "\"" : "");
+                } else {
+                    appendJson(builder, type, depth + 1);
+                }
+            }
+            if (list) {
+                builder.append(']');
+            }
+        }
+        builder.append('}');
+    }
+
+    private static void appendXml(StringBuilder builder, Class<?> clazz, int depth) {
+        for (Map.Entry<String, Field> entry : Projection.getElements(clazz).entrySet()) {
+            Class<?> type = getValueType(entry.getValue());
+            if (!isSupported(type, depth)) {
+                continue;
+            }
+
+            boolean list = List.class.isAssignableFrom(entry.getValue().getType());
+            for (int i = 0; i < (list ? 2 : 1); i++) {
+                builder.append('<').append(entry.getKey()).append('>');
+                if (isSimple(type)) {
+                    builder.append(getValue(type, entry.getKey()));
+                } else {
+                    appendXml(builder, type, depth + 1);
+                }
+                builder.append("</").append(entry.getKey()).append('>');
+            }
+        }
+    }
+
+    private static String getValue(Class<?> type, String name) {
+        int hash = Math.floorMod(name.hashCode(), 100);
+        if (type == String.class) {
+            return name + " value";
+        } else if (type == XMLGregorianCalendar.class) {
+            return TIMESTAMP;
+        } else if (type == Boolean.class || type == boolean.class) {
+            return String.valueOf(hash % 2 == 0);
+        } else if (type == Double.class || type == double.class || type == Float.class || type == float.class) {
+            return hash + ".5";
+        }
+
+        return String.valueOf(hash);
+    }
+
+    private static Class<?> getValueType(Field field) {
+        if (List.class.isAssignableFrom(field.getType())) {
+            return (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+        }
+
+        return field.getType();
+    }
+
+    private static boolean isSimple(Class<?> type) {
+        return type.isPrimitive()
+                || type == String.class
+                || type == XMLGregorianCalendar.class
+                || Number.class.isAssignableFrom(type)
+                || type == Boolean.class;
+    }
+
+    private static boolean isSupported(Class<?> type, int depth) {
+        return type != Object.class && (isSimple(type) || depth < MAX_DEPTH);
+    }
+
+    private Fixtures() {
+    }
+}
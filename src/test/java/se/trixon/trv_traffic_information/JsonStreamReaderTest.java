@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the events read from JSON, fed a few characters at a time, and that the JSON fixtures unmarshal to the objects of the XML ones.
+ *
+ * @author Patrik Karlström
+ */
+public class JsonStreamReaderTest {
+
+    private final TrafficInformation mTrafficInformation = new TrafficInformation("key");
+    private final UnmarshallerPool mUnmarshallerPool = new UnmarshallerPool();
+
+    @Test
+    public void arrays() throws Exception {
+        assertEvents("<R><A><x>1</x></A><A><x>2</x><y>3</y></A><S>a</S><S>b</S><M>c</M><M><x>4</x></M></R>",
+                "{\"R\":{\"A\":[{\"x\":\"1\"},{\"x\":2,\"y\":3}],\"S\":[\"a\",\"b\"],\"E\":[],\"M\":[\"c\",{\"x\":4}]}}");
+        // Nested arrays are flattened into the elements of the outer key
+        assertEvents("<R><a>1</a><a>2</a><a>3</a><a>4</a><a><x>5</x></a></R>", "{\"R\":{\"a\":[[1,2],[],[3,[4]],[{\"x\":5}]]}}");
+        assertEvents("<R><a><b>1</b><b>2</b></a><a><b>3</b></a></R>", "{\"R\":{\"a\":[{\"b\":[1,2]},{\"b\":[3]}]}}");
+    }
+
+    @Test
+    public void attributes() throws Exception {
+        assertEvents("<R id=\"a&amp;b\" n=\"2\" f=\"true\"><v>x</v><E id=\"1\"></E></R>",
+                "{\"R\":{\"@id\":\"a&b\",\"@n\":2,\"@none\":null,\"@f\":true,\"v\":\"x\",\"E\":{\"@id\":\"1\"}}}");
+        assertEvents("<R><LASTMODIFIED datetime=\"2020-06-29T14:40:55Z\"></LASTMODIFIED></R>", " { \"R\" : { \"LASTMODIFIED\" : { \"@datetime\" : \"2020-06-29T14:40:55Z\" } } } ");
+
+        assertThrows(XMLStreamException.class, () -> events(new StringReader("{\"R\":{\"@id\":{\"a\":1}}}")));
+        assertThrows(XMLStreamException.class, () -> events(new StringReader("{\"R\":{\"@id\":[1]}}")));
+    }
+
+    @Test
+    public void escapes() throws Exception {
+        String json = "{\"R\":{\"s\":\"q\\\"b\\\\s\\/b\\bf\\fn\\nr\\rt\\t\\u00e5\\u20AC\\uD83D\\uDE00\\u0041\\u00C5\\u007b\"}}";
+        String expected = "q\"b\\s/b\bf\fn\nr\rt\t\u00e5\u20ac\ud83d\ude00A\u00c5{";
+        for (int phase = 0; phase < 3; phase++) {
+            XMLStreamReader reader = new JsonStreamReader(new ChunkedReader(json, phase));
+            reader.nextTag();
+            reader.nextTag();
+            assertEquals("s", reader.getLocalName());
+            assertEquals(expected, reader.getElementText());
+        }
+
+        for (String invalid : List.of("\"\\x\"", "\"\\u12G4\"", "\"\\u12\"", "\"open")) {
+            String document = "{\"R\":{\"s\":" + invalid + "}}";
+            assertThrows(XMLStreamException.class, () -> events(new ChunkedReader(document, 0)), invalid);
+        }
+    }
+
+    @Test
+    public void fixturesMatchXml() throws Exception {
+        for (ObjectType<?> objectType : ObjectType.values()) {
+            Class<?> responseClass = objectType.getResponseClass();
+            Object xml = mTrafficInformation.unmarshal(responseClass, new ByteArrayInputStream(Fixtures.xml(objectType, 2).getBytes(StandardCharsets.UTF_8)));
+            String expected = marshal(objectType, xml);
+
+            String json = Fixtures.json(objectType, 2);
+            Object jaxb = mUnmarshallerPool.getContext(responseClass).createUnmarshaller().unmarshal(new JsonStreamReader(new ChunkedReader(json, 0)), responseClass).getValue();
+            Object direct = StaxUnmarshaller.unmarshal(responseClass, new JsonStreamReader(new ChunkedReader(json, 1)), null);
+            Object detected = mTrafficInformation.unmarshal(responseClass, new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+            assertEquals(expected, marshal(objectType, jaxb), objectType.getName());
+            assertEquals(expected, marshal(objectType, direct), objectType.getName());
+            assertEquals(expected, marshal(objectType, detected), objectType.getName());
+        }
+    }
+
+    @Test
+    public void literalsAtBufferBoundaries() throws Exception {
+        String members = "\"i\":-12,\"d\":12.5e-3,\"t\":true,\"f\":false,\"z\":0,\"n\":null,\"s\":\"x\"";
+        String expected = "<i>-12</i><d>12.5e-3</d><t>true</t><f>false</f><z>0</z><s>x</s>";
+        assertEvents("<R>" + expected + "</R>", "{\"R\":{" + members + "}}");
+        assertEvents("<R><a>1</a><a>true</a><a>false</a><a>-0.5</a></R>", "{\"R\":{\"a\":[1,true,null,false,-0.5]}}");
+
+        // Moves the literals across the 8192 characters read at a time
+        for (int padding = 8100; padding < 8200; padding++) {
+            String document = "{\"R\":{\"p\":\"" + "p".repeat(padding) + "\"," + members + "}}";
+            assertEquals("<R><p>" + "p".repeat(padding) + "</p>" + expected + "</R>", events(new StringReader(document)), String.valueOf(padding));
+        }
+    }
+
+    @Test
+    public void nullMembers() throws Exception {
+        assertEvents("<R><b>x</b><c>y</c><d></d></R>", "{\"R\":{\"a\":null,\"b\":\"x\",\"c\":[null,\"y\",null],\"d\":{\"e\":null},\"f\":null}}");
+    }
+
+    @Test
+    public void rejectsInvalidJson() {
+        for (String invalid : List.of("", "[\"a\"]", "{\"a\":tru}", "{\"a\":\"x\"", "{\"a\" 1}", "{\"a\":1}}", "{\"a\":1} {", "{\"a\":}", "{1:2}")) {
+            assertThrows(XMLStreamException.class, () -> events(new ChunkedReader(invalid, 0)), invalid);
+        }
+    }
+
+    /**
+     * Asserts the events of the document, fed in every phase of the chunks and all at once.
+     */
+    private void assertEvents(String expected, String json) throws XMLStreamException {
+        for (int phase = 0; phase < 3; phase++) {
+            assertEquals(expected, events(new ChunkedReader(json, phase)), json);
+        }
+        assertEquals(expected, events(new StringReader(json)), json);
+    }
+
+    /**
+     * Writes the events as XML, without declaration or escaping beyond the attribute values.
+     */
+    private String events(Reader input) throws XMLStreamException {
+        XMLStreamReader reader = new JsonStreamReader(input);
+        StringBuilder builder = new StringBuilder();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    builder.append('<').append(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        builder.append(' ').append(reader.getAttributeLocalName(i)).append("=\"").append(Query.escape(reader.getAttributeValue(i))).append('"');
+                    }
+                    builder.append('>');
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    builder.append(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    builder.append("</").append(reader.getLocalName()).append('>');
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private String marshal(ObjectType<?> objectType, Object response) throws JAXBException {
+        return marshal(objectType, objectType.getResponseClass(), response);
+    }
+
+    private <T> String marshal(ObjectType<?> objectType, Class<T> clazz, Object response) throws JAXBException {
+        Marshaller marshaller = mUnmarshallerPool.getContext(clazz).createMarshaller();
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(new JAXBElement<>(new QName("RESPONSE"), clazz, clazz.cast(response)), writer);
+
+        return writer.toString();
+    }
+
+    /**
+     * Returns one to three characters per call, cycling from the given phase.
+     */
+    private static class ChunkedReader extends Reader {
+
+        private int mCalls;
+        private int mPosition;
+        private final String mText;
+
+        ChunkedReader(String text, int phase) {
+            mText = text;
+            mCalls = phase;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (mPosition == mText.length()) {
+                return -1;
+            }
+
+            int count = Math.min(Math.min(length, 1 + mCalls++ % 3), mText.length() - mPosition);
+            mText.getChars(mPosition, mPosition + count, buffer, offset);
+            mPosition += count;
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT;
+import se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.TrainAnnouncement;
+
+/**
+ * Checks the XML written by built queries and filters.
+ *
+ * @author Patrik Karlström
+ */
+public class QueryTest {
+
+    private static final String SPECIAL = "a&b<c>d\"e'f\tg\nh\ri";
+
+    @Test
+    public void escapesValues() throws Exception {
+        assertEquals("a&amp;b&lt;c&gt;d&quot;e&apos;f&#9;g&#10;h&#13;i", Query.escape(SPECIAL));
+        assertEquals("Cst", Query.escape("Cst"));
+
+        Query<RESULT> literal = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+                .filter(Filter.eq("LocationSignature", SPECIAL))
+                .build();
+        Query<RESULT> parameterized = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+                .filter(Filter.eq("LocationSignature", Query.param("station")))
+                .build();
+
+        // The parser hands back the values as given, line breaks and tabs included
+        assertEquals(SPECIAL, parse(literal.toXml(null)).getElementsByTagName("EQ").item(0).getAttributes().getNamedItem("value").getNodeValue());
+        assertEquals(SPECIAL, parse(parameterized.toXml(Map.of("station", SPECIAL))).getElementsByTagName("EQ").item(0).getAttributes().getNamedItem("value").getNodeValue());
+    }
+
+    @Test
+    public void rejectsInvalidQueries() {
+        assertThrows(IllegalStateException.class, () -> Query.builder(ObjectType.TRAIN_ANNOUNCEMENT).include("ActivityId").exclude("Deleted").build());
+        assertThrows(IllegalArgumentException.class, () -> Query.builder(ObjectType.TRAIN_ANNOUNCEMENT).include("NoSuchField").build());
+        assertThrows(IllegalArgumentException.class, () -> Query.builder(ObjectType.TRAIN_ANNOUNCEMENT).include(TrainAnnouncement.class, TrainAnnouncement::getActivityId).include("FromLocation.NoSuchField").build());
+        assertThrows(IllegalArgumentException.class, () -> Filter.and());
+        assertThrows(IllegalArgumentException.class, () -> Filter.eq(" ", "x"));
+        assertThrows(IllegalArgumentException.class, () -> Filter.in("LocationSignature", "Cst", Query.param("station")));
+        assertThrows(IllegalArgumentException.class, () -> Query.param(""));
+    }
+
+    @Test
+    public void serializesFilters() {
+        assertEquals("<OR><IN name=\"LocationSignature\" value=\"Cst,U,M\" /><NOTIN name=\"ActivityType\" value=\"Ankomst\" /></OR>",
+                Filter.or(Filter.in("LocationSignature", "Cst", "U", "M"), Filter.notIn("ActivityType", "Ankomst")).toString());
+        assertEquals("<NOT><EXISTS name=\"Deleted\" value=\"true\" /><LIKE name=\"ProductInformation\" value=\"/^Pendel/\" /></NOT>",
+                Filter.not(Filter.exists("Deleted", true), Filter.like("ProductInformation", "/^Pendel/")).toString());
+        assertEquals("<AND><GTE name=\"A\" value=\"1\" /><LT name=\"A\" value=\"2\" /><LTE name=\"B\" value=\"3\" /><NE name=\"C\" value=\"4\" /></AND>",
+                Filter.and(Filter.gte("A", 1), Filter.lt("A", 2), Filter.lte("B", 3), Filter.ne("C", 4)).toString());
+        assertEquals("<WITHIN name=\"Geometry.SWEREF99TM\" shape=\"center\" value=\"674130 6579686\" radius=\"500\" />",
+                Filter.withinCenter("Geometry.SWEREF99TM", "674130 6579686", 500).toString());
+        assertEquals("<WITHIN name=\"Geometry.SWEREF99TM\" shape=\"box\" value=\"${corners}\" />",
+                Filter.withinBox("Geometry.SWEREF99TM", Query.param("corners")).toString());
+    }
+
+    @Test
+    public void serializesQuery() throws Exception {
+        Query<RESULT> query = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+                .filter(Filter.and(
+                        Filter.eq("ActivityType", "Avgang"),
+                        Filter.gt("AdvertisedTimeAtLocation", "$dateadd(-00:15:00)")))
+                .include(TrainAnnouncement.class, TrainAnnouncement::getAdvertisedTimeAtLocation)
+                .include("ToLocation.LocationName")
+                .orderBy("AdvertisedTimeAtLocation")
+                .limit(20)
+                .build();
+
+        String expected = "  <QUERY limit=\"20\" objecttype=\"TrainAnnouncement\" orderby=\"AdvertisedTimeAtLocation\" schemaversion=\"1.6\">\n"
+                + "    <FILTER><AND><EQ name=\"ActivityType\" value=\"Avgang\" /><GT name=\"AdvertisedTimeAtLocation\" value=\"$dateadd(-00:15:00)\" /></AND></FILTER>"
+                + "<INCLUDE>AdvertisedTimeAtLocation</INCLUDE><INCLUDE>ToLocation.LocationName</INCLUDE>\n"
+                + "  </QUERY>\n";
+        assertEquals(expected, query.toXml(null));
+        assertEquals(expected, query.toString());
+        assertTrue(query.getParameterNames().isEmpty());
+        // Serialized once
+        assertSame(query.toXml(null), query.toXml(Map.of()));
+        assertEquals("QUERY", parse(query.toXml(null)).getTagName());
+
+        String excluded = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT).exclude("Deleted").changeId(0).attribute("limit", 5).attribute("limit", null).build().toXml(null);
+        assertEquals("  <QUERY changeid=\"0\" objecttype=\"TrainAnnouncement\" schemaversion=\"1.6\">\n    <EXCLUDE>Deleted</EXCLUDE>\n  </QUERY>\n", excluded);
+    }
+
+    @Test
+    public void substitutesParameters() {
+        Query<RESULT> query = Query.builder(ObjectType.TRAIN_ANNOUNCEMENT)
+                .filter(Filter.and(
+                        Filter.eq("LocationSignature", Query.param("station")),
+                        Filter.eq("ActivityType", Query.param("activity")),
+                        Filter.ne("LocationSignature", Query.param("station"))))
+                .skip(Query.param("skip"))
+                .build();
+
+        assertEquals(List.of("skip", "station", "activity"), List.copyOf(query.getParameterNames()));
+        assertEquals("  <QUERY objecttype=\"TrainAnnouncement\" schemaversion=\"1.6\" skip=\"40\">\n"
+                + "    <FILTER><AND><EQ name=\"LocationSignature\" value=\"Cst\" /><EQ name=\"ActivityType\" value=\"Avgang\" /><NE name=\"LocationSignature\" value=\"Cst\" /></AND></FILTER>\n"
+                + "  </QUERY>\n", query.toXml(Map.of("station", "Cst", "activity", "Avgang", "skip", 40)));
+        assertTrue(query.toString().contains("skip=\"${skip}\""));
+        assertTrue(query.toString().contains("<EQ name=\"LocationSignature\" value=\"${station}\" />"));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> query.toXml(Map.of("station", "Cst", "skip", 0)));
+        assertEquals("Missing value of parameter activity", ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> query.toXml(null));
+    }
+
+    private Element parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+    }
+}
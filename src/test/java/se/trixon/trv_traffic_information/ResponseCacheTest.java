@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+import se.trixon.trv_traffic_information.railroad.reasoncode.v1.RESULT;
+
+/**
+ * Drives the cache with a fake clock and loaders counting their calls.
+ *
+ * @author Patrik Karlström
+ */
+public class ResponseCacheTest {
+
+    private static final String ERROR_RESPONSE = "<RESPONSE><RESULT><ERROR><SOURCE>Database</SOURCE><MESSAGE>Timeout</MESSAGE></ERROR></RESULT></RESPONSE>";
+    private static final String RESPONSE = "<RESPONSE><RESULT><ReasonCode><Code>ANA001</Code></ReasonCode></RESULT></RESPONSE>";
+
+    private final AtomicLong mNanoTime = new AtomicLong();
+
+    @Test
+    public void doesNotCacheErrorResults() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = (requests.incrementAndGet() == 1 ? ERROR_RESPONSE : RESPONSE).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        try {
+            TrafficInformation trafficInformation = new TrafficInformation("key");
+            trafficInformation.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v2/data.xml");
+            ResponseCache cache = new ResponseCache(1_000_000);
+            cache.setTtl(ObjectType.REASON_CODE, Duration.ofHours(1));
+            trafficInformation.setResponseCache(cache);
+
+            List<RESULT> results = trafficInformation.getResults(ObjectType.REASON_CODE, null, null, null);
+            assertNotNull(ObjectType.REASON_CODE.getError(results.get(0)));
+            assertEquals(0, cache.size());
+
+            results = trafficInformation.getResults(ObjectType.REASON_CODE, null, null, null);
+            assertEquals("ANA001", results.get(0).getReasonCode().get(0).getCode());
+            results = trafficInformation.getResults(ObjectType.REASON_CODE, null, null, null);
+            assertEquals("ANA001", results.get(0).getReasonCode().get(0).getCode());
+            assertEquals(2, requests.get());
+            assertEquals(1, cache.getHits());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void doesNotCacheUncacheableLoads() throws Exception {
+        ResponseCache cache = createCache(1000);
+        Loader loader = new Loader(10, false);
+
+        assertEquals("a1", get(cache, "a", loader));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals("a2", get(cache, "a", loader));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void evictsEntriesHeavierThanTheMaximum() throws Exception {
+        ResponseCache cache = createCache(100);
+
+        assertEquals("a1", get(cache, "a", new Loader(101, true)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByWeight() throws Exception {
+        ResponseCache cache = createCache(100);
+        Loader loader = new Loader(40, true);
+
+        assertEquals("a1", get(cache, "a", loader));
+        assertEquals("b2", get(cache, "b", loader));
+        assertEquals("a1", get(cache, "a", loader));
+        assertEquals(80, cache.getWeight());
+
+        assertEquals("c3", get(cache, "c", loader));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.getWeight());
+
+        assertEquals("a1", get(cache, "a", loader));
+        assertEquals("c3", get(cache, "c", loader));
+        assertEquals("b4", get(cache, "b", loader));
+        assertEquals(4, loader.mCalls.get());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception {
+        ResponseCache cache = createCache(1000);
+        Loader loader = new Loader(10, true);
+
+        assertEquals("a1", get(cache, "a", loader));
+        mNanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10) - 1);
+        assertEquals("a1", get(cache, "a", loader));
+        assertEquals(1, cache.getHits());
+
+        mNanoTime.incrementAndGet();
+        assertEquals("a2", get(cache, "a", loader));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getWeight());
+    }
+
+    @Test
+    public void keepsStaleEntryWhenRevalidationFails() throws Exception {
+        ResponseCache cache = createCache(1000);
+        cache.setStaleWhileRevalidate(Duration.ofSeconds(5));
+
+        assertEquals("a1", get(cache, "a", new Loader(10, true)));
+        mNanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Loader errors = new Loader(10, false);
+        assertEquals("a1", get(cache, "a", errors));
+        assertEquals("a1", get(cache, "a", errors));
+        assertEquals(2, errors.mCalls.get());
+        assertEquals(2, cache.getStaleHits());
+
+        mNanoTime.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals("a1", get(cache, "a", new Loader(10, true)));
+        assertEquals(2, cache.getMisses());
+    }
+
+    private ResponseCache createCache(long maxWeight) {
+        ResponseCache cache = new ResponseCache(maxWeight, mNanoTime::get);
+        cache.setTtl(ObjectType.REASON_CODE, Duration.ofSeconds(10));
+
+        return cache;
+    }
+
+    private String get(ResponseCache cache, String key, Loader loader) throws Exception {
+        loader.mKey = key;
+
+        return cache.<String>get(ObjectType.REASON_CODE, key, loader).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Completes each load at once with the key and the number of the call.
+     */
+    private static class Loader implements Supplier<CompletableFuture<ResponseCache.Value>> {
+
+        private final boolean mCacheable;
+        private final AtomicInteger mCalls = new AtomicInteger();
+        private String mKey;
+        private final long mWeight;
+
+        Loader(long weight, boolean cacheable) {
+            mWeight = weight;
+            mCacheable = cacheable;
+        }
+
+        @Override
+        public CompletableFuture<ResponseCache.Value> get() {
+            return CompletableFuture.completedFuture(new ResponseCache.Value(mKey + mCalls.incrementAndGet(), mWeight, mCacheable));
+        }
+    }
+}
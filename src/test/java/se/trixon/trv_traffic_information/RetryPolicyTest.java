@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.net.ssl.SSLSession;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Evaluates attempts against fake responses and a fixed clock.
+ *
+ * @author Patrik Karlström
+ */
+public class RetryPolicyTest {
+
+    private static final Instant NOW = Instant.parse("2020-06-29T12:00:00Z");
+
+    private final Clock mClock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @Test
+    public void backoffGrowsUpToMaxDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(1), 2.0, 0.0, mClock);
+
+        assertEquals(Duration.ofMillis(100), retryPolicy.evaluate(1, true, null));
+        assertEquals(Duration.ofMillis(200), retryPolicy.evaluate(2, true, response(503, null)));
+        assertEquals(Duration.ofMillis(400), retryPolicy.evaluate(3, true, null));
+        assertEquals(Duration.ofMillis(800), retryPolicy.evaluate(4, true, null));
+        assertEquals(Duration.ofSeconds(1), retryPolicy.evaluate(5, true, null));
+        assertEquals(Duration.ofSeconds(1), retryPolicy.evaluate(9, true, null));
+        assertEquals(6, retryPolicy.getRetries());
+        assertEquals(Duration.ofMillis(3500), retryPolicy.getRetryTime());
+    }
+
+    @Test
+    public void jitterShortensWithinRange() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(1), 2.0, 0.5, mClock);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long millis = retryPolicy.evaluate(3, true, null).toMillis();
+            min = Math.min(min, millis);
+            max = Math.max(max, millis);
+        }
+
+        assertTrue(min >= 200, "min=" + min);
+        assertTrue(max <= 400, "max=" + max);
+        assertTrue(min < 250 && max > 350, String.format("min=%d, max=%d", min, max));
+    }
+
+    @Test
+    public void retriesRetryableStatuses() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(500));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertFalse(RetryPolicy.isRetryable(200));
+        assertFalse(RetryPolicy.isRetryable(400));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+
+    @Test
+    public void retryAfterBeyondMaxDelayEndsRetries() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(10), 2.0, 0.0, mClock);
+
+        assertNull(retryPolicy.evaluate(1, true, response(429, "11")));
+        assertNull(retryPolicy.evaluate(1, true, response(503, httpDate(NOW.plusSeconds(60)))));
+        assertEquals(2, retryPolicy.getExhausted());
+        assertEquals(0, retryPolicy.getRetries());
+        assertEquals(Duration.ofSeconds(10), retryPolicy.evaluate(1, true, response(429, "10")));
+    }
+
+    @Test
+    public void retryAfterHttpDate() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(10), 2.0, 0.0, mClock);
+
+        assertEquals(Duration.ofSeconds(5), retryPolicy.evaluate(1, true, response(503, httpDate(NOW.plusSeconds(5)))));
+        // A date in the past leaves the backoff
+        assertEquals(Duration.ofMillis(100), retryPolicy.evaluate(1, true, response(503, httpDate(NOW.minusSeconds(5)))));
+    }
+
+    @Test
+    public void retryAfterSeconds() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(10), 2.0, 0.0, mClock);
+
+        assertEquals(Duration.ofSeconds(3), retryPolicy.evaluate(1, true, response(429, "3")));
+        assertEquals(Duration.ofSeconds(3), retryPolicy.evaluate(1, true, response(429, " 3 ")));
+        // Never shorter than the backoff
+        assertEquals(Duration.ofMillis(400), retryPolicy.evaluate(3, true, response(429, "0")));
+        assertEquals(Duration.ofMillis(100), retryPolicy.evaluate(1, true, response(429, "-5")));
+        assertEquals(Duration.ofMillis(100), retryPolicy.evaluate(1, true, response(429, "soon")));
+    }
+
+    @Test
+    public void stopsAtMaxAttempts() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1), 2.0, 0.0, mClock);
+
+        assertEquals(Duration.ofMillis(100), retryPolicy.evaluate(1, true, null));
+        assertEquals(Duration.ofMillis(200), retryPolicy.evaluate(2, true, null));
+        assertNull(retryPolicy.evaluate(3, true, null));
+        assertNull(retryPolicy.evaluate(1, false, response(200, null)));
+        assertEquals(4, retryPolicy.getAttempts());
+        assertEquals(3, retryPolicy.getFailures());
+        assertEquals(2, retryPolicy.getRetries());
+        assertEquals(1, retryPolicy.getExhausted());
+    }
+
+    private String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    private HttpResponse<Void> response(int statusCode, String retryAfter) {
+        Map<String, List<String>> headers = retryAfter == null ? Map.of() : Map.of("Retry-After", List.of(retryAfter));
+
+        return new FakeResponse(statusCode, HttpHeaders.of(headers, (name, value) -> true));
+    }
+
+    /**
+     * A response of which only the status and headers are used.
+     */
+    private static class FakeResponse implements HttpResponse<Void> {
+
+        private final HttpHeaders mHeaders;
+        private final int mStatusCode;
+
+        FakeResponse(int statusCode, HttpHeaders headers) {
+            mStatusCode = statusCode;
+            mHeaders = headers;
+        }
+
+        @Override
+        public Void body() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return mHeaders;
+        }
+
+        @Override
+        public Optional<HttpResponse<Void>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return HttpRequest.newBuilder(uri()).build();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public int statusCode() {
+            return mStatusCode;
+        }
+
+        @Override
+        public URI uri() {
+            return URI.create("https://api.trafikinfo.trafikverket.se/v2/data.xml");
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.trixon.trv_traffic_information.railroad.trainannouncement.v1_6.RESULT;
+
+/**
+ * Runs subscriptions against a local Server-Sent Events stub.
+ *
+ * @author Patrik Karlström
+ */
+public class SseSubscriptionTest {
+
+    private static final long TIMEOUT = 10;
+
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private volatile Function<HttpExchange, String> mHandler;
+    private final List<String> mLastEventIds = new CopyOnWriteArrayList<>();
+    private HttpServer mServer;
+    private TrafficInformation mTrafficInformation;
+
+    @AfterEach
+    public void afterEach() {
+        mServer.stop(0);
+    }
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/sse", exchange -> {
+            mConnections.incrementAndGet();
+            mLastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+            String body = mHandler.apply(exchange);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            exchange.close();
+        });
+        mServer.start();
+        mTrafficInformation = new TrafficInformation("key");
+    }
+
+    @Test
+    public void clientErrorEndsExceptionally() throws Exception {
+        mHandler = exchange -> null;
+        Collector collector = new Collector();
+        try (SseSubscription<RESULT> subscription = subscribe()) {
+            subscription.subscribe(collector);
+            Throwable throwable = collector.mDone.get(TIMEOUT, TimeUnit.SECONDS);
+            assertTrue(throwable instanceof IOException, String.valueOf(throwable));
+            assertFalse(subscription.isOpen());
+        }
+        assertEquals(1, mConnections.get());
+    }
+
+    @Test
+    public void closeCompletesSubscribers() throws Exception {
+        mHandler = exchange -> "retry: 50\n: keep-alive\n\n";
+        Collector collector = new Collector();
+        SseSubscription<RESULT> subscription = subscribe();
+        subscription.subscribe(collector);
+        subscription.close();
+
+        assertNull(collector.mDone.get(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(subscription.isOpen());
+    }
+
+    @Test
+    public void opensStreamOnFirstSubscriber() throws Exception {
+        mHandler = exchange -> mConnections.get() == 1 ? event("1", "a1", "a2") + event("2", "a3") + "retry: 50\n\n" : "";
+        Collector collector = new Collector();
+        try (SseSubscription<RESULT> subscription = subscribe()) {
+            Thread.sleep(200);
+            assertEquals(0, mConnections.get(), "The stream was opened before anyone subscribed");
+
+            subscription.subscribe(collector);
+            assertEquals("a1", collector.next().getTrainAnnouncement().get(0).getActivityId());
+            assertEquals("a3", collector.next().getTrainAnnouncement().get(0).getActivityId());
+            assertEquals("2", subscription.getLastEventId());
+        }
+    }
+
+    @Test
+    public void reconnectsWithLastEventId() throws Exception {
+        mHandler = exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if (mConnections.get() == 1) {
+                return "retry: 50\n" + event("7", "a1");
+            } else if (query != null && query.contains("lasteventid=7")) {
+                return event("8", "a2");
+            }
+
+            return "";
+        };
+        Collector collector = new Collector();
+        try (SseSubscription<RESULT> subscription = subscribe()) {
+            subscription.subscribe(collector);
+            assertEquals("a1", collector.next().getTrainAnnouncement().get(0).getActivityId());
+            assertEquals("a2", collector.next().getTrainAnnouncement().get(0).getActivityId());
+        }
+        assertEquals("null", mLastEventIds.get(0));
+        assertEquals("7", mLastEventIds.get(1));
+    }
+
+    @Test
+    public void requiresSseUrl() {
+        assertThrows(IllegalArgumentException.class, () -> mTrafficInformation.subscribe(ObjectType.TRAIN_ANNOUNCEMENT, new RESULT()));
+    }
+
+    @Test
+    public void skipsUnparsableEvents() throws Exception {
+        mHandler = exchange -> mConnections.get() == 1 ? "retry: 50\ndata: <RESPONSE>\n\n" + event("1", "a1") : "";
+        Collector collector = new Collector();
+        try (SseSubscription<RESULT> subscription = subscribe()) {
+            subscription.subscribe(collector);
+            assertEquals("a1", collector.next().getTrainAnnouncement().get(0).getActivityId());
+        }
+    }
+
+    private String event(String id, String... activityIds) {
+        StringBuilder builder = new StringBuilder("id: ").append(id).append("\ndata: <RESPONSE><RESULT>");
+        for (String activityId : activityIds) {
+            builder.append("<TrainAnnouncement><ActivityId>").append(activityId).append("</ActivityId></TrainAnnouncement>");
+        }
+
+        return builder.append("</RESULT>\ndata: </RESPONSE>\n\n").toString();
+    }
+
+    private SseSubscription<RESULT> subscribe() {
+        return mTrafficInformation.subscribe(ObjectType.TRAIN_ANNOUNCEMENT, "http://127.0.0.1:" + mServer.getAddress().getPort() + "/sse");
+    }
+
+    private static class Collector implements Flow.Subscriber<RESULT> {
+
+        private final CompletableFuture<Throwable> mDone = new CompletableFuture<>();
+        private final BlockingQueue<RESULT> mResults = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onComplete() {
+            mDone.complete(null);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mDone.complete(throwable);
+        }
+
+        @Override
+        public void onNext(RESULT result) {
+            mResults.add(result);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        private RESULT next() throws InterruptedException {
+            RESULT result = mResults.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(result, "No result within " + TIMEOUT + " seconds");
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.UnmarshalException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads the same document of every object type with JAXB and with the generated StAX readers, and compares the re-marshalled XML.
+ *
+ * @author Patrik Karlström
+ */
+public class StaxUnmarshallerTest {
+
+    private static final String ERROR_RESULT = "<RESULT><ERROR><SOURCE>Database</SOURCE><MESSAGE>Timeout &amp; retry</MESSAGE></ERROR></RESULT>";
+    private static final String INFO = "<INFO><LASTMODIFIED datetime=\"2020-06-29T14:40:55.123+02:00\" /><LASTCHANGEID>7001</LASTCHANGEID>"
+            + "<EVALRESULT><Count kind=\"all\">3<Part>a</Part></Count></EVALRESULT><EVALRESULT /><SSEURL>https://example.com/sse?a=1&amp;b=2</SSEURL></INFO>";
+    private static final String UNKNOWN = "<Unknown value=\"1\"><Nested>text</Nested><Nested /></Unknown>";
+
+    private final TrafficInformation mDirect = new TrafficInformation("key");
+    private final TrafficInformation mJaxb = new TrafficInformation("key");
+    private final UnmarshallerPool mUnmarshallerPool = new UnmarshallerPool();
+
+    public StaxUnmarshallerTest() {
+        mDirect.setDirectUnmarshalling(true);
+    }
+
+    @Test
+    public void elementStreamsMatchJaxb() throws Exception {
+        for (ObjectType<?> objectType : ObjectType.values()) {
+            String document = Fixtures.xml(objectType, 3);
+            List<String> expected = streamObjects(objectType, document, false);
+            List<String> actual = streamObjects(objectType, document, true);
+
+            assertEquals(3, actual.size(), objectType.getName());
+            assertEquals(expected, actual, objectType.getName());
+        }
+    }
+
+    @Test
+    public void readsOnlyGeneratedClasses() throws Exception {
+        assertTrue(StaxUnmarshaller.canUnmarshal(ObjectType.SITUATION.getResponseClass()));
+        assertTrue(StaxUnmarshaller.canUnmarshal(ObjectType.SITUATION.getObjectClass()));
+        assertFalse(StaxUnmarshaller.canUnmarshal(String.class));
+
+        XMLStreamReader reader = TrafficInformation.createXMLStreamReader(new ByteArrayInputStream("<a/>".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> StaxUnmarshaller.unmarshal(String.class, reader, null));
+    }
+
+    @Test
+    public void rejectsInvalidValues() throws Exception {
+        Class<?> responseClass = ObjectType.TRAIN_ANNOUNCEMENT.getResponseClass();
+        for (String element : List.of("<Advertised>yes</Advertised>", "<NewEquipment>1.5</NewEquipment>", "<ModifiedTime>yesterday</ModifiedTime>")) {
+            String document = "<RESPONSE><RESULT><TrainAnnouncement>" + element + "</TrainAnnouncement></RESULT></RESPONSE>";
+            assertThrows(UnmarshalException.class, () -> mDirect.unmarshal(responseClass, new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8))), element);
+        }
+    }
+
+    @Test
+    public void responsesMatchJaxb() throws Exception {
+        for (ObjectType<?> objectType : ObjectType.values()) {
+            Class<?> responseClass = objectType.getResponseClass();
+            byte[] document = getDocument(objectType).getBytes(StandardCharsets.UTF_8);
+            Object expected = mJaxb.unmarshal(responseClass, new ByteArrayInputStream(document));
+            Object actual = mDirect.unmarshal(responseClass, new ByteArrayInputStream(document));
+
+            assertEquals(2, countObjects(objectType, actual), objectType.getName());
+            assertEquals(marshal(objectType, "RESPONSE", expected), marshal(objectType, "RESPONSE", actual), objectType.getName());
+        }
+    }
+
+    @Test
+    public void resultsMatchJaxb() throws Exception {
+        for (ObjectType<?> objectType : ObjectType.values()) {
+            String document = getDocument(objectType);
+            List<String> expected = readResults(objectType, document, false);
+            List<String> actual = readResults(objectType, document, true);
+
+            assertEquals(2, actual.size(), objectType.getName());
+            assertEquals(expected, actual, objectType.getName());
+        }
+    }
+
+    private <R> int countObjects(ObjectType<R> objectType, Object response) {
+        return objectType.getObjects(objectType.getResults(response).get(0)).size();
+    }
+
+    /**
+     * Adds what the fixtures leave out: attributes, skipped elements, INFO with any-content and a RESULT with an ERROR.
+     */
+    private String getDocument(ObjectType<?> objectType) {
+        return Fixtures.xml(objectType, 2)
+                .replace("<RESULT>", "<RESULT id=\"a&amp;b\">" + UNKNOWN)
+                .replace("</RESULT>", INFO + "</RESULT>" + ERROR_RESULT);
+    }
+
+    private String marshal(ObjectType<?> objectType, String name, Object object) throws JAXBException {
+        return marshal(objectType, name, object.getClass(), object);
+    }
+
+    private <T> String marshal(ObjectType<?> objectType, String name, Class<T> clazz, Object object) throws JAXBException {
+        Marshaller marshaller = mUnmarshallerPool.getContext(objectType.getResponseClass()).createMarshaller();
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(new JAXBElement<>(new QName(name), clazz, clazz.cast(object)), writer);
+
+        return writer.toString();
+    }
+
+    /**
+     * Reads each RESULT on its own, like a batch does.
+     */
+    private List<String> readResults(ObjectType<?> objectType, String document, boolean direct) throws Exception {
+        ArrayList<String> results = new ArrayList<>();
+        Class<?> resultClass = objectType.getResultClass();
+        Unmarshaller unmarshaller = mUnmarshallerPool.getContext(objectType.getResponseClass()).createUnmarshaller();
+        XMLStreamReader reader = TrafficInformation.createXMLStreamReader(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)));
+        boolean positioned = false;
+        while (positioned || reader.hasNext()) {
+            int event = positioned ? reader.getEventType() : reader.next();
+            positioned = false;
+            if (event == XMLStreamConstants.START_ELEMENT && "RESULT".equals(reader.getLocalName())) {
+                Object result = direct ? StaxUnmarshaller.unmarshal(resultClass, reader, null) : unmarshaller.unmarshal(reader, resultClass).getValue();
+                results.add(marshal(objectType, "RESULT", result));
+                positioned = true;
+            }
+        }
+
+        return results;
+    }
+
+    private List<String> streamObjects(ObjectType<?> objectType, String document, boolean direct) throws Exception {
+        ArrayList<String> objects = new ArrayList<>();
+        try (ElementIterator<?> iterator = new ElementIterator<>(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)),
+                mUnmarshallerPool, objectType.getResponseClass(), objectType.getName(), objectType.getObjectClass(), direct)) {
+            while (iterator.hasNext()) {
+                objects.add(marshal(objectType, objectType.getName(), iterator.next()));
+            }
+        }
+
+        return objects;
+    }
+}
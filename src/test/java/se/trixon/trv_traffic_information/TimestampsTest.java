@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the fast paths with the DatatypeFactory and <code>toGregorianCalendar()</code>.
+ *
+ * @author Patrik Karlström
+ */
+public class TimestampsTest {
+
+    private static final ZoneId STOCKHOLM = ZoneId.of("Europe/Stockholm");
+
+    private final DatatypeFactory mDatatypeFactory;
+
+    public TimestampsTest() throws Exception {
+        mDatatypeFactory = DatatypeFactory.newInstance();
+    }
+
+    @Test
+    public void fractionDigits() throws Exception {
+        assertSame("2020-06-29T14:40:55Z");
+        assertSame("2020-06-29T14:40:55.5Z");
+        assertSame("2020-06-29T14:40:55.05+02:00");
+        assertSame("2020-06-29T14:40:55.000+02:00");
+        assertSame("2020-06-29T14:40:55.999+02:00");
+        assertSame("2020-06-29T14:40:55.1234+02:00");
+        assertSame("2020-06-29T14:40:55.000001-05:30");
+        assertSame("2020-06-29T14:40:55.123456789Z");
+        // More than nine digits are left to the DatatypeFactory
+        assertSame("2020-06-29T14:40:55.1234567891Z");
+        assertSame("2020-06-29T14:40:55.99999999999Z");
+
+        assertEquals(123_456_789, Timestamps.parseInstant("2020-06-29T14:40:55.123456789Z").getNano());
+        assertEquals(100_000_000, Timestamps.parseInstant("2020-06-29T14:40:55.1Z").getNano());
+    }
+
+    @Test
+    public void invalidDates() {
+        for (String text : List.of(
+                "2021-02-30T00:00:00Z",
+                "2021-02-29T00:00:00Z",
+                "2100-02-29T00:00:00+01:00",
+                "2021-04-31T00:00:00Z",
+                "2021-06-31T12:00:00",
+                "2021-00-10T00:00:00Z",
+                "2021-13-10T00:00:00Z",
+                "2021-01-00T00:00:00Z",
+                "2021-01-32T00:00:00Z",
+                "2021-01-10T25:00:00Z",
+                "2021-01-10T10:60:00Z",
+                "2021-01-10T10:00:00.Z",
+                "2021-01-10T10:00:00+15:00",
+                "2021-01-10T10:00:00+01",
+                "2021-01-10 10:00:00Z",
+                "yesterday")) {
+            assertThrows(IllegalArgumentException.class, () -> Timestamps.parse(text), text);
+            assertThrows(IllegalArgumentException.class, () -> Timestamps.parseEpochMillis(text, STOCKHOLM), text);
+        }
+
+        assertSame("2020-02-29T00:00:00Z");
+        assertSame("2000-02-29T00:00:00Z");
+        assertSame("2021-12-31T23:59:59Z");
+    }
+
+    @Test
+    public void offsets() throws Exception {
+        assertSame("2020-06-29T14:40:55Z");
+        assertSame("2020-06-29T14:40:55+00:00");
+        assertSame("2020-06-29T14:40:55+02:00");
+        assertSame("2020-06-29T14:40:55-09:30");
+        assertSame("2020-06-29T14:40:55+14:00");
+        assertSame("2020-01-01T00:30:00+01:00");
+        assertSame("2020-06-29T14:40:55");
+        assertSame("2020-01-15T08:00:00.250");
+
+        assertEquals(1593434455000L, Timestamps.parseEpochMillis("2020-06-29T14:40:55+02:00"));
+        assertEquals(1593434455000L, Timestamps.parseEpochMillis("2020-06-29T14:40:55", STOCKHOLM));
+        assertEquals(1593434455000L, Timestamps.parseEpochMillis("2020-06-29T12:40:55", ZoneId.of("UTC")));
+    }
+
+    @Test
+    public void overlapsAndGapsWithoutOffset() throws Exception {
+        // 02:30 occurs twice when summer time ends, and never when it starts
+        for (String text : List.of("2020-10-25T02:00:00", "2020-10-25T02:30:00.500", "2020-10-25T02:59:59", "2020-03-29T02:30:00", "2020-03-29T03:00:00")) {
+            XMLGregorianCalendar calendar = mDatatypeFactory.newXMLGregorianCalendar(text);
+            long expected = calendar.toGregorianCalendar(TimeZone.getTimeZone(STOCKHOLM), Locale.ROOT, null).getTimeInMillis();
+
+            assertEquals(expected, Timestamps.parseEpochMillis(text, STOCKHOLM), text);
+            assertEquals(expected, Timestamps.toEpochMillis(calendar, STOCKHOLM), text);
+        }
+    }
+
+    /**
+     * Asserts that the fast paths agree with the DatatypeFactory and <code>toGregorianCalendar()</code> in the default zone.
+     */
+    private void assertSame(String text) {
+        XMLGregorianCalendar expected = mDatatypeFactory.newXMLGregorianCalendar(text);
+        XMLGregorianCalendar actual = Timestamps.parse(text);
+
+        assertEquals(expected, actual, text);
+        assertEquals(expected.toXMLFormat(), actual.toXMLFormat(), text);
+        long millis = expected.toGregorianCalendar().getTimeInMillis();
+        assertEquals(millis, Timestamps.parseEpochMillis(text), text);
+        assertEquals(millis, Timestamps.toEpochMillis(expected), text);
+        assertEquals(millis, Timestamps.parseInstant(text).toEpochMilli(), text);
+        assertEquals(0, Timestamps.compare(expected, actual), text);
+    }
+}
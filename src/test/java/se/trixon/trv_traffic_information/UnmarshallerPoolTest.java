@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.transform.stream.StreamSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hammers the pool with every RESPONSE type in parallel, each document carrying its own object count and change id so that an unmarshaller
+ * shared between threads shows up as a mismatch.
+ *
+ * @author Patrik Karlström
+ */
+public class UnmarshallerPoolTest {
+
+    private static final int ITERATIONS = 50;
+    private static final int THREADS = 16;
+
+    @Test
+    public void pooledUnderContention() throws Exception {
+        hammer(new UnmarshallerPool(UnmarshallerPool.Mode.POOLED, 4));
+    }
+
+    @Test
+    public void pooledWithoutIdle() throws Exception {
+        hammer(new UnmarshallerPool(UnmarshallerPool.Mode.POOLED, 0));
+    }
+
+    @Test
+    public void sharesOneContextPerClass() throws Exception {
+        UnmarshallerPool unmarshallerPool = new UnmarshallerPool();
+        Class<?> responseClass = ObjectType.TRAIN_ANNOUNCEMENT.getResponseClass();
+        assertSame(unmarshallerPool.getContext(responseClass), unmarshallerPool.getContext(responseClass));
+    }
+
+    @Test
+    public void threadLocalUnderContention() throws Exception {
+        hammer(new UnmarshallerPool(UnmarshallerPool.Mode.THREAD_LOCAL, 0));
+    }
+
+    private void hammer(UnmarshallerPool unmarshallerPool) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int seed = thread;
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        for (ObjectType<?> objectType : ObjectType.values()) {
+                            parseAndVerify(unmarshallerPool, objectType, seed * ITERATIONS + i);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private <R> void parseAndVerify(UnmarshallerPool unmarshallerPool, ObjectType<R> objectType, int id) throws JAXBException {
+        int count = id % 5;
+        StringBuilder builder = new StringBuilder("<RESPONSE><RESULT>");
+        for (int i = 0; i < count; i++) {
+            builder.append("<").append(objectType.getName()).append("/>");
+        }
+        builder.append("<INFO><LASTCHANGEID>").append(id).append("</LASTCHANGEID></INFO></RESULT></RESPONSE>");
+
+        Class<?> responseClass = objectType.getResponseClass();
+        Unmarshaller unmarshaller = unmarshallerPool.borrow(responseClass);
+        Object response;
+        try {
+            response = unmarshaller.unmarshal(new StreamSource(new StringReader(builder.toString())), responseClass).getValue();
+        } finally {
+            unmarshallerPool.release(responseClass, unmarshaller);
+        }
+
+        assertSame(responseClass, response.getClass());
+        List<R> results = objectType.getResults(response);
+        assertEquals(1, results.size(), objectType.getName());
+        assertEquals(count, objectType.getObjects(results.get(0)).size(), objectType.getName());
+        assertEquals(String.valueOf(id), objectType.getLastChangeId(results.get(0)), objectType.getName());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.trv_traffic_information;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compares parsing the XML and the JSON wire format of the largest object types.
+ * <p>
+ * Both documents are generated by {@link Fixtures} from the same values, so they carry the same objects. The object types are ranked by
+ * the size of one object and the largest are parsed with JAXB and with the direct unmarshaller, reporting the median time of the measured
+ * iterations.</p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=se.trixon.trv_traffic_information.WireFormatBenchmark -Dexec.args="20000 10 5"
+ * </pre>
+ *
+ * The arguments are the number of objects per document, the number of measured iterations and the number of object types, all optional.
+ *
+ * @author Patrik Karlström
+ */
+public class WireFormatBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private final int mIterations;
+    private final int mObjects;
+    private final TrafficInformation mTrafficInformation = new TrafficInformation("key");
+
+    private WireFormatBenchmark(int objects, int iterations) {
+        mObjects = objects;
+        mIterations = iterations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int objects = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int types = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ArrayList<ObjectType<?>> objectTypes = new ArrayList<>(ObjectType.values());
+        objectTypes.sort(Comparator.comparingInt((ObjectType<?> objectType) -> Fixtures.xml(objectType, 1).length()).reversed());
+
+        System.out.format("%d objects per document, median of %d iterations after %d warm-up%n", objects, iterations, WARMUP_ITERATIONS);
+        System.out.format("%-22s %-5s %10s %12s %12s%n", "Object type", "Wire", "MB", "JAXB ms", "Direct ms");
+        WireFormatBenchmark benchmark = new WireFormatBenchmark(objects, iterations);
+        for (ObjectType<?> objectType : objectTypes.subList(0, Math.min(types, objectTypes.size()))) {
+            benchmark.run(objectType);
+        }
+    }
+
+    private double measure(ObjectType<?> objectType, byte[] document, boolean direct) throws Exception {
+        mTrafficInformation.setDirectUnmarshalling(direct);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parse(objectType, document);
+        }
+
+        double[] millis = new double[mIterations];
+        for (int i = 0; i < mIterations; i++) {
+            long start = System.nanoTime();
+            parse(objectType, document);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+
+        return millis[mIterations / 2];
+    }
+
+    private <R> void parse(ObjectType<R> objectType, byte[] document) throws Exception {
+        Object response = mTrafficInformation.unmarshal(objectType.getResponseClass(), new ByteArrayInputStream(document));
+        int count = objectType.getObjects(objectType.getResults(response).get(0)).size();
+        if (count != mObjects) {
+            throw new IllegalStateException(String.format("%s: %d objects parsed, %d expected", objectType, count, mObjects));
+        }
+    }
+
+    private void run(ObjectType<?> objectType) throws Exception {
+        for (TrafficInformation.WireFormat wireFormat : TrafficInformation.WireFormat.values()) {
+            String document = wireFormat == TrafficInformation.WireFormat.XML ? Fixtures.xml(objectType, mObjects) : Fixtures.json(objectType, mObjects);
+            byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+            System.out.format("%-22s %-5s %10.1f %12.1f %12.1f%n",
+                    objectType.getName(),
+                    wireFormat,
+                    bytes.length / 1e6,
+                    measure(objectType, bytes, false),
+                    measure(objectType, bytes, true));
+        }
+    }
+}